@@ -0,0 +1,145 @@
+/*
+ * Copyright 2022-2025 Noah Ross
+ *
+ * This file is part of PerPlayerKit.
+ *
+ * PerPlayerKit is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * PerPlayerKit is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with PerPlayerKit. If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.noah.perplayerkit.benchmark;
+
+import dev.noah.perplayerkit.PerPlayerKit;
+import org.bukkit.Material;
+import org.bukkit.block.ShulkerBox;
+import org.bukkit.enchantments.Enchantment;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.BlockStateMeta;
+import org.bukkit.inventory.meta.PotionMeta;
+import org.bukkit.potion.PotionType;
+import org.mockbukkit.mockbukkit.MockBukkit;
+import org.mockbukkit.mockbukkit.ServerMock;
+
+/**
+ * Shared setup for the benchmarks: a mocked server with the plugin enabled, and the kits the benchmarks run on.
+ * JMH runs every benchmark in its own fork, so the server is started once per fork and never torn down.
+ */
+public final class BenchmarkServer {
+
+    private static ServerMock server;
+    private static PerPlayerKit plugin;
+
+    private BenchmarkServer() {
+    }
+
+    public static synchronized PerPlayerKit start() {
+        if (plugin == null) {
+            server = MockBukkit.mock();
+            plugin = MockBukkit.load(PerPlayerKit.class);
+        }
+        return plugin;
+    }
+
+    public static ServerMock getServer() {
+        start();
+        return server;
+    }
+
+    /**
+     * @param name empty, typical, full or shulker
+     * @return a new kit of that shape
+     */
+    public static ItemStack[] kit(String name) {
+        return switch (name) {
+            case "empty" -> new ItemStack[41];
+            case "typical" -> typicalKit();
+            case "full" -> fullKit();
+            case "shulker" -> shulkerKit();
+            default -> throw new IllegalArgumentException("Unknown kit " + name);
+        };
+    }
+
+    // a crystal pvp kit, about half the slots used
+    private static ItemStack[] typicalKit() {
+        ItemStack[] kit = new ItemStack[41];
+        kit[0] = enchanted(Material.NETHERITE_SWORD, Enchantment.SHARPNESS, 5);
+        kit[1] = new ItemStack(Material.END_CRYSTAL, 64);
+        kit[2] = new ItemStack(Material.OBSIDIAN, 64);
+        kit[3] = new ItemStack(Material.ENDER_PEARL, 16);
+        kit[4] = new ItemStack(Material.ENCHANTED_GOLDEN_APPLE, 64);
+        kit[5] = new ItemStack(Material.RESPAWN_ANCHOR, 64);
+        kit[6] = new ItemStack(Material.GLOWSTONE, 64);
+        kit[7] = enchanted(Material.NETHERITE_PICKAXE, Enchantment.EFFICIENCY, 5);
+        kit[8] = new ItemStack(Material.TOTEM_OF_UNDYING);
+        for (int i = 9; i < 18; i++) {
+            kit[i] = new ItemStack(Material.TOTEM_OF_UNDYING);
+        }
+        for (int i = 18; i < 22; i++) {
+            kit[i] = potion(PotionType.STRONG_HEALING);
+        }
+        kit[36] = enchanted(Material.NETHERITE_BOOTS, Enchantment.BLAST_PROTECTION, 4);
+        kit[37] = enchanted(Material.NETHERITE_LEGGINGS, Enchantment.BLAST_PROTECTION, 4);
+        kit[38] = enchanted(Material.NETHERITE_CHESTPLATE, Enchantment.PROTECTION, 4);
+        kit[39] = enchanted(Material.NETHERITE_HELMET, Enchantment.PROTECTION, 4);
+        kit[40] = new ItemStack(Material.TOTEM_OF_UNDYING);
+        return kit;
+    }
+
+    // every slot used, the largest kit a player can save without shulkers
+    private static ItemStack[] fullKit() {
+        ItemStack[] kit = typicalKit();
+        for (int i = 0; i < 36; i++) {
+            if (kit[i] == null) {
+                kit[i] = i % 2 == 0 ? new ItemStack(Material.EXPERIENCE_BOTTLE, 64) : potion(PotionType.STRONG_SWIFTNESS);
+            }
+        }
+        return kit;
+    }
+
+    // the typical kit with a row of shulker boxes full of restock
+    private static ItemStack[] shulkerKit() {
+        ItemStack[] kit = typicalKit();
+        ItemStack[] contents = fullKit();
+        ItemStack[] restock = new ItemStack[27];
+        System.arraycopy(contents, 0, restock, 0, restock.length);
+        for (int i = 27; i < 36; i++) {
+            kit[i] = shulker(restock);
+        }
+        return kit;
+    }
+
+    private static ItemStack enchanted(Material material, Enchantment enchantment, int level) {
+        ItemStack item = new ItemStack(material);
+        item.addEnchantment(enchantment, level);
+        item.addEnchantment(Enchantment.UNBREAKING, 3);
+        item.addEnchantment(Enchantment.MENDING, 1);
+        return item;
+    }
+
+    private static ItemStack potion(PotionType type) {
+        ItemStack item = new ItemStack(Material.SPLASH_POTION);
+        PotionMeta meta = (PotionMeta) item.getItemMeta();
+        meta.setBasePotionType(type);
+        item.setItemMeta(meta);
+        return item;
+    }
+
+    private static ItemStack shulker(ItemStack[] contents) {
+        ItemStack item = new ItemStack(Material.SHULKER_BOX);
+        BlockStateMeta meta = (BlockStateMeta) item.getItemMeta();
+        ShulkerBox box = (ShulkerBox) meta.getBlockState();
+        box.getInventory().setContents(contents);
+        meta.setBlockState(box);
+        item.setItemMeta(meta);
+        return item;
+    }
+}
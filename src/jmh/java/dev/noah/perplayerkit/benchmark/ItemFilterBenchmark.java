@@ -0,0 +1,58 @@
+/*
+ * Copyright 2022-2025 Noah Ross
+ *
+ * This file is part of PerPlayerKit.
+ *
+ * PerPlayerKit is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * PerPlayerKit is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with PerPlayerKit. If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.noah.perplayerkit.benchmark;
+
+import dev.noah.perplayerkit.ItemFilter;
+import dev.noah.perplayerkit.PerPlayerKit;
+import org.bukkit.inventory.ItemStack;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The kit room whitelist filter, with every item in the kit allowed so the whole kit is checked.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ItemFilterBenchmark {
+
+    @Param({"typical", "full", "shulker"})
+    public String kit;
+
+    private ItemStack[] items;
+
+    @Setup
+    public void setup() {
+        PerPlayerKit plugin = BenchmarkServer.start();
+        plugin.getConfig().set("anti-exploit.only-allow-kitroom-items", true);
+        new ItemFilter(plugin);
+        items = BenchmarkServer.kit(kit);
+        ItemFilter.get().addToWhitelist(List.of(items, BenchmarkServer.kit("full")));
+    }
+
+    @Benchmark
+    public ItemStack[] filterItemStack() {
+        return ItemFilter.get().filterItemStack(items);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2022-2025 Noah Ross
+ *
+ * This file is part of PerPlayerKit.
+ *
+ * PerPlayerKit is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * PerPlayerKit is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with PerPlayerKit. If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.noah.perplayerkit.benchmark;
+
+import dev.noah.perplayerkit.KitManager;
+import dev.noah.perplayerkit.util.IDUtil;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looking kits up in {@link KitManager}, and the save and load paths players hit from commands.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KitManagerBenchmark {
+
+    @Param({"typical", "full", "shulker"})
+    public String kit;
+
+    private Player player;
+    private UUID uuid;
+    private UUID offline;
+    private String kitId;
+    private ItemStack[] items;
+    private int nextSlot;
+
+    @Setup
+    public void setup() {
+        BenchmarkServer.start();
+        player = BenchmarkServer.getServer().addPlayer();
+        uuid = player.getUniqueId();
+        offline = UUID.randomUUID();
+        kitId = IDUtil.getPlayerKitId(uuid, 1);
+        items = BenchmarkServer.kit(kit);
+        for (int slot = 1; slot <= 9; slot++) {
+            // odd slots differ from even ones, so loading them in turn changes the inventory every time
+            KitManager.get().savekit(uuid, slot, slot % 2 == 1 ? items : BenchmarkServer.kit("typical"), true);
+        }
+        KitManager.get().savePublicKit("benchmark", items);
+    }
+
+    @Benchmark
+    public ItemStack[] getPlayerKit() {
+        return KitManager.get().getPlayerKit(uuid, 1);
+    }
+
+    @Benchmark
+    public ItemStack[] getPlayerKitNotLoaded() {
+        return KitManager.get().getPlayerKit(offline, 1);
+    }
+
+    @Benchmark
+    public ItemStack[] getItemStackArrayById() {
+        return KitManager.get().getItemStackArrayById(kitId);
+    }
+
+    @Benchmark
+    public ItemStack[] getPublicKit() {
+        return KitManager.get().getPublicKit("benchmark");
+    }
+
+    @Benchmark
+    public boolean saveKit() {
+        return KitManager.get().savekit(uuid, 1, items, true);
+    }
+
+    @Benchmark
+    public boolean loadKit() {
+        nextSlot = nextSlot % 9 + 1;
+        return KitManager.get().loadKitSilent(player, nextSlot);
+    }
+}
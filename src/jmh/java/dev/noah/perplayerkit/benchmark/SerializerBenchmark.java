@@ -0,0 +1,73 @@
+/*
+ * Copyright 2022-2025 Noah Ross
+ *
+ * This file is part of PerPlayerKit.
+ *
+ * PerPlayerKit is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * PerPlayerKit is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with PerPlayerKit. If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.noah.perplayerkit.benchmark;
+
+import dev.noah.perplayerkit.util.Serializer;
+import org.bukkit.inventory.ItemStack;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding kits with both item codecs, compression follows the storage section of the default config.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializerBenchmark {
+
+    @Param({"empty", "typical", "full", "shulker"})
+    public String kit;
+
+    @Param({"bukkit", "paper"})
+    public String codec;
+
+    private ItemStack[] items;
+    private byte[] encoded;
+
+    @Setup
+    public void setup() {
+        BenchmarkServer.start();
+        boolean paper = codec.equals("paper");
+        if (Serializer.setPaperCodec(paper) != paper) {
+            throw new IllegalStateException("The paper codec is not available on this server implementation");
+        }
+        items = BenchmarkServer.kit(kit);
+        encoded = Serializer.itemStackArrayToBytes(items);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return Serializer.itemStackArrayToBytes(items);
+    }
+
+    @Benchmark
+    public ItemStack[] decode() throws IOException {
+        return Serializer.itemStackArrayFromBytes(encoded);
+    }
+
+    @Benchmark
+    public ItemStack[] roundTrip() throws IOException {
+        return Serializer.itemStackArrayFromBytes(Serializer.itemStackArrayToBytes(items));
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2022-2025 Noah Ross
+ *
+ * This file is part of PerPlayerKit.
+ *
+ * PerPlayerKit is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * PerPlayerKit is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with PerPlayerKit. If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.noah.perplayerkit.benchmark;
+
+import dev.noah.perplayerkit.PerPlayerKit;
+import dev.noah.perplayerkit.storage.*;
+import dev.noah.perplayerkit.storage.sql.SQLite;
+import dev.noah.perplayerkit.util.IDUtil;
+import dev.noah.perplayerkit.util.Serializer;
+import org.openjdk.jmh.annotations.*;
+import redis.embedded.RedisServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading and writing a player's kits with each storage backend, against local stand-ins: SQLite files, an embedded
+ * Redis server and files in a temporary directory. MySQL is left out, it needs a real server.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StorageBenchmark {
+
+    private static final int PLAYERS = 64;
+
+    @Param({"sqlite", "sqlite-legacy", "redis", "redis-flat", "file", "yaml"})
+    public String backend;
+
+    private Path directory;
+    private RedisServer redis;
+    private StorageManager storage;
+    private final List<Map<String, byte[]>> kitsByPlayer = new ArrayList<>();
+    private final List<List<String>> idsByPlayer = new ArrayList<>();
+    private int next;
+
+    @Setup
+    public void setup() throws Exception {
+        PerPlayerKit plugin = BenchmarkServer.start();
+        directory = Files.createTempDirectory("perplayerkit-bench");
+        storage = createStorage(plugin);
+        storage.connect();
+        storage.init();
+
+        byte[] typical = Serializer.itemStackArrayToBytes(BenchmarkServer.kit("typical"));
+        byte[] full = Serializer.itemStackArrayToBytes(BenchmarkServer.kit("full"));
+        for (int i = 0; i < PLAYERS; i++) {
+            UUID uuid = UUID.randomUUID();
+            Map<String, byte[]> kits = new HashMap<>();
+            List<String> ids = new ArrayList<>();
+            for (int slot = 1; slot <= 9; slot++) {
+                kits.put(IDUtil.getPlayerKitId(uuid, slot), slot % 2 == 0 ? full : typical);
+                ids.add(IDUtil.getPlayerKitId(uuid, slot));
+                // enderchests are looked up on join too, most players have none
+                ids.add(IDUtil.getECId(uuid, slot));
+            }
+            storage.saveKitBytesByIDs(kits);
+            kitsByPlayer.add(kits);
+            idsByPlayer.add(ids);
+        }
+    }
+
+    private StorageManager createStorage(PerPlayerKit plugin) throws IOException {
+        File dir = directory.toFile();
+        return switch (backend) {
+            case "sqlite" -> new NormalizedSQLStorage(plugin, new SQLite(plugin, new File(dir, "database.db").getPath()));
+            case "sqlite-legacy" -> new SQLStorage(new SQLite(plugin, new File(dir, "database.db").getPath()));
+            case "redis", "redis-flat" -> {
+                int port;
+                try (ServerSocket socket = new ServerSocket(0)) {
+                    port = socket.getLocalPort();
+                }
+                redis = new RedisServer(port);
+                redis.start();
+                plugin.getConfig().set("redis.host", "localhost");
+                plugin.getConfig().set("redis.port", port);
+                plugin.getConfig().set("redis.password", "");
+                yield backend.equals("redis") ? new RedisHashStorage(plugin) : new RedisStorage(plugin);
+            }
+            case "file" -> new LogStorage(plugin, new File(dir, "kitlog"), new File(dir, "kits.yml"));
+            case "yaml" -> new YAMLStorage(plugin, new File(dir, "kits.yml").getPath());
+            default -> throw new IllegalArgumentException("Unknown backend " + backend);
+        };
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        storage.close();
+        if (redis != null) {
+            redis.stop();
+        }
+        try (var files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    // what a join does, all 18 slots of one player
+    @Benchmark
+    public Map<String, byte[]> loadPlayer() {
+        next = (next + 1) % PLAYERS;
+        return storage.getKitBytesByIDs(idsByPlayer.get(next));
+    }
+
+    // what a quit does when every kit changed
+    @Benchmark
+    public void savePlayer() {
+        next = (next + 1) % PLAYERS;
+        storage.saveKitBytesByIDs(kitsByPlayer.get(next));
+    }
+
+    @Benchmark
+    public byte[] loadKit() {
+        next = (next + 1) % PLAYERS;
+        return storage.getKitBytesByID(idsByPlayer.get(next).get(0));
+    }
+}
@@ -28,20 +28,30 @@ import org.bukkit.inventory.meta.ItemMeta;
 import org.bukkit.plugin.Plugin;
 
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.EnumSet;
 import java.util.Set;
 
 public class ItemFilter {
 
 
-    public static Set<String> whitelist;
+    // never modified once published, changes build a new set and swap it in so a reader never sees it half built
+    public static volatile Set<Material> whitelist;
+    private static final Set<Material> SHULKER_BOXES = EnumSet.noneOf(Material.class);
     private static ItemFilter instance;
 
+    static {
+        for (Material material : Material.values()) {
+            if (material.name().contains("SHULKER_BOX")) {
+                SHULKER_BOXES.add(material);
+            }
+        }
+    }
+
     private Plugin plugin;
     private boolean isEnabled;
 
     public ItemFilter(Plugin plugin) {
-        whitelist = new HashSet<>();
+        whitelist = EnumSet.noneOf(Material.class);
         this.plugin = plugin;
         instance = this;
         isEnabled = plugin.getConfig().getBoolean("anti-exploit.only-allow-kitroom-items",false);
@@ -55,6 +65,10 @@ public class ItemFilter {
     }
 
 
+    public boolean isEnabled() {
+        return isEnabled;
+    }
+
     public ItemStack[] filterItemStack(ItemStack[] input) {
 
         if(!isEnabled){
@@ -62,35 +76,45 @@ public class ItemFilter {
         }
 
         ItemStack[] output = input.clone();
-        for (ItemStack item : output) {
-            if (!isSafe(item)) {
-                item.setType(Material.AIR);
-                //item = null;
+        for (int i = 0; i < output.length; i++) {
+            if (output[i] != null) {
+                ItemStack item = filterItem(output[i]);
+                output[i] = item == null ? new ItemStack(Material.AIR) : item;
             }
+        }
 
 
-            if (item != null) {
+        return output;
+    }
+
+    /**
+     * Filters a single item, see {@link #filterItemStack(ItemStack[])}.
+     *
+     * @return the item, or null if it is not allowed
+     */
+    public ItemStack filterItem(ItemStack item) {
+        if (!isEnabled || item == null) {
+            return item;
+        }
+        if (!isSafe(item)) {
+            // dropped rather than changed, the item may be shared with other kits or still be in an inventory
+            return null;
+        }
 
-                if (item.getType().toString().contains("SHULKER_BOX")) {
-                    if (item.getItemMeta() instanceof BlockStateMeta blockStateMeta) {
-                        if (blockStateMeta.getBlockState() instanceof ShulkerBox shulker) {
-                            shulker.getInventory().setContents(filterItemStack(shulker.getInventory().getContents()));
-                        }
-                    }
+        if (SHULKER_BOXES.contains(item.getType())) {
+            if (item.getItemMeta() instanceof BlockStateMeta blockStateMeta) {
+                if (blockStateMeta.getBlockState() instanceof ShulkerBox shulker) {
+                    shulker.getInventory().setContents(filterItemStack(shulker.getInventory().getContents()));
                 }
             }
-
-
         }
-
-
-        return output;
+        return item;
     }
 
     public static boolean isSafe(ItemStack i) {
 
         if (i != null) {
-            if (!(whitelist.contains(i.getType().toString()))) {
+            if (!whitelist.contains(i.getType())) {
                 return false;
             }
             if (i.getAmount() != -1) {
@@ -118,19 +142,36 @@ public class ItemFilter {
         return true;
     }
 
-    public void addToWhitelist(Collection<ItemStack[]> items) {
+    public synchronized void addToWhitelist(Collection<ItemStack[]> items) {
+        Set<Material> updated = EnumSet.noneOf(Material.class);
+        updated.addAll(whitelist);
+        addTypes(updated, items);
+        whitelist = updated;
+    }
+
+    /**
+     * Replaces the whitelist with the types of the given items in one step. Kits filtered at the same time see either
+     * the old or the new whitelist, never an empty one.
+     */
+    public synchronized void setWhitelist(Collection<ItemStack[]> items) {
+        Set<Material> updated = EnumSet.noneOf(Material.class);
+        addTypes(updated, items);
+        whitelist = updated;
+    }
+
+    public synchronized void clearWhitelist() {
+        whitelist = EnumSet.noneOf(Material.class);
+    }
+
+    private static void addTypes(Set<Material> types, Collection<ItemStack[]> items) {
         for (ItemStack[] itemStacks : items) {
             for (ItemStack item : itemStacks) {
                 if (item != null) {
-                        whitelist.add(item.getType().toString());
+                    types.add(item.getType());
                 }
             }
         }
     }
 
-    public void clearWhitelist() {
-        whitelist.clear();
-    }
-
 
 }
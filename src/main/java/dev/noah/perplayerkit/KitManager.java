@@ -18,8 +18,13 @@
  */
 package dev.noah.perplayerkit;
 
+import dev.noah.perplayerkit.storage.KitKey;
+import dev.noah.perplayerkit.storage.exceptions.StorageReadException;
 import dev.noah.perplayerkit.util.BroadcastManager;
 import dev.noah.perplayerkit.util.IDUtil;
+import dev.noah.perplayerkit.util.ItemInterner;
+import dev.noah.perplayerkit.util.KitApplier;
+import dev.noah.perplayerkit.util.KitTemplates;
 import dev.noah.perplayerkit.util.Serializer;
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
@@ -28,21 +33,38 @@ import org.bukkit.inventory.ItemStack;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.function.UnaryOperator;
 
 public class KitManager {
 
 
     private static KitManager instance;
     private final PerPlayerKit plugin;
-    private final HashMap<String, ItemStack[]> kitByKitIDMap;
-    private final HashMap<UUID, Integer> lastKitUsedByPlayer;
+    // kits are read from the main thread, region threads and async tasks at the same time.
+    // A player's PlayerKitData is never modified in place, writers swap in a new copy with compute
+    private final ConcurrentHashMap<UUID, PlayerKitData> kitDataByPlayer;
+    private final ConcurrentHashMap<String, ItemStack[]> publicKitByName;
+    private final ConcurrentHashMap<UUID, Integer> lastKitUsedByPlayer;
     private final List<PublicKit> publicKitList;
+    private final OfflineKitCache offlineKitCache;
+    // loads that are still running, an entry removes itself when its load finishes
+    private final ConcurrentHashMap<UUID, CompletableFuture<Void>> pendingLoads = new ConcurrentHashMap<>();
+    private final boolean lazyDecode;
+    private final long releaseDecodedAfterMillis;
 
     public KitManager(PerPlayerKit plugin) {
         this.plugin = plugin;
-        lastKitUsedByPlayer = new HashMap<>();
-        publicKitList = new ArrayList<>();
-        kitByKitIDMap = new HashMap<>();
+        lastKitUsedByPlayer = new ConcurrentHashMap<>();
+        publicKitList = new CopyOnWriteArrayList<>();
+        kitDataByPlayer = new ConcurrentHashMap<>();
+        publicKitByName = new ConcurrentHashMap<>();
+        offlineKitCache = new OfflineKitCache(plugin);
+        lazyDecode = plugin.getConfig().getBoolean("storage.lazy-decode", true);
+        releaseDecodedAfterMillis = plugin.getConfig().getLong("storage.release-decoded-after", 600) * 1000;
 
         instance = this;
 
@@ -55,8 +77,52 @@ public class KitManager {
         return instance;
     }
 
+    //string ids are only used at the storage boundary, everything else looks kits up by player and slot
     public ItemStack[] getItemStackArrayById(String id) {
-        return kitByKitIDMap.get(id);
+        KitKey key = KitKey.parse(id);
+        return key == null ? null : getKit(key);
+    }
+
+    //only looks at players that are loaded, not the offline cache
+    private ItemStack[] getKit(KitKey key) {
+        PlayerKitData data = key.player == null ? null : kitDataByPlayer.get(key.player);
+        return switch (key.type) {
+            case KIT -> data == null ? null : data.getKit(key.slot);
+            case ENDERCHEST -> data == null ? null : data.getEnderchest(key.slot);
+            case PUBLIC -> getPublicKit(key.name);
+            case KITROOM -> KitRoomDataManager.get().getKitRoomPage(key.slot);
+        };
+    }
+
+    private boolean isLoaded(KitKey key) {
+        PlayerKitData data = key.player == null ? null : kitDataByPlayer.get(key.player);
+        return switch (key.type) {
+            case KIT -> data != null && data.hasKit(key.slot);
+            case ENDERCHEST -> data != null && data.hasEnderchest(key.slot);
+            case PUBLIC -> publicKitByName.containsKey(key.name);
+            case KITROOM -> false;
+        };
+    }
+
+    //replaces a kit that is already loaded, a null kit unloads it
+    private void replaceLoadedKit(KitKey key, ItemStack[] kit) {
+        if (key.type == KitKey.Type.PUBLIC) {
+            publicKitByName.computeIfPresent(key.name, (name, current) -> kit);
+            return;
+        }
+        if (key.type == KitKey.Type.KITROOM || !PlayerKitData.isValidSlot(key.slot)) {
+            return;
+        }
+        kitDataByPlayer.computeIfPresent(key.player, (uuid, data) -> {
+            if (key.type == KitKey.Type.KIT) {
+                return data.hasKit(key.slot) ? data.withKit(key.slot, kit) : data;
+            }
+            return data.hasEnderchest(key.slot) ? data.withEnderchest(key.slot, kit) : data;
+        });
+    }
+
+    private void updateKitData(UUID uuid, UnaryOperator<PlayerKitData> update) {
+        kitDataByPlayer.compute(uuid, (k, data) -> update.apply(data == null ? PlayerKitData.EMPTY : data));
     }
 
 
@@ -65,269 +131,83 @@ public class KitManager {
     }
 
     public int getLastKitLoaded(UUID uuid) {
-        if (lastKitUsedByPlayer.containsKey(uuid)) {
-            return lastKitUsedByPlayer.get(uuid);
-        }
-        return -1;
+        return lastKitUsedByPlayer.getOrDefault(uuid, -1);
     }
 
 
     public boolean savekit(UUID uuid, int slot, ItemStack[] kit) {
-
-        if (Bukkit.getPlayer(uuid) != null) {
-            Player player = Bukkit.getPlayer(uuid);
-            if (player != null) {
-
-                boolean notEmpty = false;
-                for (ItemStack i : kit) {
-                    if (i != null) {
-                        if (!notEmpty) {
-                            notEmpty = true;
-                        }
-
-                    }
-                }
-
-                if (notEmpty) {
-
-                    if (kit[36] != null) {
-                        if (!kit[36].getType().toString().contains("BOOTS")) {
-                            kit[36] = null;
-                        }
-                    }
-                    if (kit[37] != null) {
-                        if (!kit[37].getType().toString().contains("LEGGINGS")) {
-                            kit[37] = null;
-                        }
-                    }
-                    if (kit[38] != null) {
-                        if (!(kit[38].getType().toString().contains("CHESTPLATE") || kit[38].getType().toString().contains("ELYTRA"))) {
-                            kit[38] = null;
-                        }
-                    }
-                    if (kit[39] != null) {
-                        if (!kit[39].getType().toString().contains("HELMET")) {
-                            kit[39] = null;
-                        }
-                    }
-
-
-                    kitByKitIDMap.put(IDUtil.getPlayerKitId(uuid, slot), kit);
-                    player.sendMessage(ChatColor.GREEN + "Kit " + slot + " saved!");
-
-                    PerPlayerKit.getScheduler().runTaskAsynchronously(() -> savePlayerKitToDB(uuid, slot));
-                    return true;
-                } else {
-                    player.sendMessage(ChatColor.RED + "You cant save an empty kit!");
-                }
-
-
-            }
-
-        }
-        return false;
-
+        return savekit(uuid, slot, kit, false);
     }
 
     public boolean savePublicKit(Player player, String publickit, ItemStack[] kit) {
-
-
-        boolean notEmpty = false;
-        for (ItemStack i : kit) {
-            if (i != null) {
-                if (!notEmpty) {
-                    notEmpty = true;
-                }
-
-            }
-        }
-
-        if (notEmpty) {
-
-            if (kit[36] != null) {
-                if (!kit[36].getType().toString().contains("BOOTS")) {
-                    kit[36] = null;
-                }
-            }
-            if (kit[37] != null) {
-                if (!kit[37].getType().toString().contains("LEGGINGS")) {
-                    kit[37] = null;
-                }
-            }
-            if (kit[38] != null) {
-                if (!(kit[38].getType().toString().contains("CHESTPLATE") || kit[38].getType().toString().contains("ELYTRA"))) {
-                    kit[38] = null;
-                }
-            }
-            if (kit[39] != null) {
-                if (!kit[39].getType().toString().contains("HELMET")) {
-                    kit[39] = null;
-                }
-            }
-
-
-            kitByKitIDMap.put(IDUtil.getPublicKitId(publickit), kit);
+        if (savePublicKit(publickit, kit)) {
             player.sendMessage(ChatColor.GREEN + "Public Kit " + publickit + " saved!");
-
-            PerPlayerKit.getScheduler().runTaskAsynchronously(() -> savePublicKitToDB(publickit));
+            savePublicKitToDB(publickit);
             return true;
-        } else {
-            player.sendMessage(ChatColor.RED + "You cant save an empty kit!");
         }
-
-
+        player.sendMessage(ChatColor.RED + "You cant save an empty kit!");
         return false;
-
     }
 
     public boolean savePublicKit(String id, ItemStack[] kit) {
-        boolean notEmpty = false;
-        for (ItemStack i : kit) {
-            if (i != null) {
-                if (!notEmpty) {
-                    notEmpty = true;
-                }
-
-            }
-        }
-
-        if (notEmpty) {
-
-            if (kit[36] != null) {
-                if (!kit[36].getType().toString().contains("BOOTS")) {
-                    kit[36] = null;
-                }
-            }
-            if (kit[37] != null) {
-                if (!kit[37].getType().toString().contains("LEGGINGS")) {
-                    kit[37] = null;
-                }
-            }
-            if (kit[38] != null) {
-                if (!(kit[38].getType().toString().contains("CHESTPLATE") || kit[38].getType().toString().contains("ELYTRA"))) {
-                    kit[38] = null;
-                }
-            }
-            if (kit[39] != null) {
-                if (!kit[39].getType().toString().contains("HELMET")) {
-                    kit[39] = null;
-                }
-            }
-
-            kitByKitIDMap.put(IDUtil.getPublicKitId(id), kit);
-
-            return true;
-
+        ItemStack[] validated = KitValidator.get().validate(KitValidator.Kind.KIT, kit);
+        if (validated == null) {
+            return false;
         }
-        return false;
+        publicKitByName.put(id, ItemInterner.get().intern(validated));
+        return true;
     }
 
     public boolean saveEC(UUID uuid, int slot, ItemStack[] kit) {
+        Player player = Bukkit.getPlayer(uuid);
+        if (!PlayerKitData.isValidSlot(slot) || player == null) {
+            return false;
+        }
 
-        if (Bukkit.getPlayer(uuid) != null) {
-            Player player = Bukkit.getPlayer(uuid);
-            if (player != null) {
-                boolean notEmpty = false;
-                for (ItemStack i : kit) {
-                    if (i != null) {
-                        if (!notEmpty) {
-                            notEmpty = true;
-                        }
-
-                    }
-                }
-
-                if (notEmpty) {
-
-                    kitByKitIDMap.put(IDUtil.getECId(uuid, slot), kit);
-                    player.sendMessage(ChatColor.GREEN + "Enderchest " + slot + " saved!");
-
-                    PerPlayerKit.getScheduler().runTaskAsynchronously(() -> saveEnderchestToDB(uuid, slot));
-                    return true;
-                } else {
-                    player.sendMessage(ChatColor.RED + "You cant save an empty enderchest!");
-                }
-
-
-            }
-
+        ItemStack[] validated = KitValidator.get().validate(KitValidator.Kind.ENDERCHEST, kit);
+        if (validated == null) {
+            player.sendMessage(ChatColor.RED + "You cant save an empty enderchest!");
+            return false;
         }
-        return false;
+        ItemInterner.get().intern(validated);
+        updateKitData(uuid, data -> data.withEnderchest(slot, validated));
+        player.sendMessage(ChatColor.GREEN + "Enderchest " + slot + " saved!");
 
+        saveEnderchestToDB(uuid, slot);
+        return true;
     }
 
-
+    //a silent save does not message the player or queue the write, the caller does that
     public boolean savekit(UUID uuid, int slot, ItemStack[] kit, boolean silent) {
-        if (silent) {
-            if (Bukkit.getPlayer(uuid) != null) {
-                Player player = Bukkit.getPlayer(uuid);
-                if (player != null) {
-
-                    boolean notEmpty = false;
-                    for (ItemStack i : kit) {
-                        if (i != null) {
-                            if (!notEmpty) {
-                                notEmpty = true;
-                            }
-
-                        }
-                    }
-
-                    if (notEmpty) {
-
-                        if (kit[36] != null) {
-                            if (!kit[36].getType().toString().contains("BOOTS")) {
-                                kit[36] = null;
-                            }
-                        }
-                        if (kit[37] != null) {
-                            if (!kit[37].getType().toString().contains("LEGGINGS")) {
-                                kit[37] = null;
-                            }
-                        }
-                        if (kit[38] != null) {
-                            if (!(kit[38].getType().toString().contains("CHESTPLATE") || kit[38].getType().toString().contains("ELYTRA"))) {
-                                kit[38] = null;
-                            }
-                        }
-                        if (kit[39] != null) {
-                            if (!kit[39].getType().toString().contains("HELMET")) {
-                                kit[39] = null;
-                            }
-                        }
-
-
-                        kitByKitIDMap.put(IDUtil.getPlayerKitId(uuid, slot), ItemFilter.get().filterItemStack(kit));
-
-                        return true;
-                    } else {
-                        player.sendMessage(ChatColor.RED + "You cant save an empty kit!");
-                    }
-
-
-                }
-
-            }
+        Player player = Bukkit.getPlayer(uuid);
+        if (!PlayerKitData.isValidSlot(slot) || player == null) {
             return false;
-        } else {
-            return savekit(uuid, slot, kit);
         }
 
+        ItemStack[] validated = KitValidator.get().validate(KitValidator.Kind.KIT, kit);
+        if (validated == null) {
+            player.sendMessage(ChatColor.RED + "You cant save an empty kit!");
+            return false;
+        }
+        ItemInterner.get().intern(validated);
+        updateKitData(uuid, data -> data.withKit(slot, validated));
+        if (!silent) {
+            player.sendMessage(ChatColor.GREEN + "Kit " + slot + " saved!");
+            savePlayerKitToDB(uuid, slot);
+        }
+        return true;
     }
 
-
     public boolean regearKit(Player player, int slot) {
 
-        UUID uuid = player.getUniqueId();
-        if (kitByKitIDMap.get(IDUtil.getPlayerKitId(uuid, slot)) == null) {
+        ItemStack[] kit = getPlayerKit(player.getUniqueId(), slot);
+        if (kit == null) {
             return false;
         }
 
         boolean invertWhitelist = plugin.getConfig().getBoolean("regear.invert-whitelist", false);
         Set<String> whitelist = new HashSet<>(plugin.getConfig().getStringList("regear.whitelist"));
 
-        ItemStack[] kit = kitByKitIDMap.get(IDUtil.getPlayerKitId(uuid, slot));
-
         ItemStack[] playerInventory = player.getInventory().getContents();
         for (int i = 0; i < playerInventory.length; i++) {
 
@@ -358,12 +238,11 @@ public class KitManager {
     }
 
 
-    private boolean loadKitInternal(Player player, String kitId, String notFoundMessage, boolean isEnderChest, Runnable afterLoad) {
+    private boolean loadKitInternal(Player player, ItemStack[] kit, String notFoundMessage, boolean isEnderChest, Runnable afterLoad) {
         if (player == null) {
             return false;
         }
 
-        ItemStack[] kit = kitByKitIDMap.get(kitId);
         if (kit == null) {
             if (notFoundMessage != null) {
                 player.sendMessage(ChatColor.RED + notFoundMessage);
@@ -371,11 +250,7 @@ public class KitManager {
             return false;
         }
 
-        if (isEnderChest) {
-            player.getEnderChest().setContents(kit);
-        } else {
-            player.getInventory().setContents(kit);
-        }
+        KitApplier.get().apply(isEnderChest ? player.getEnderChest() : player.getInventory(), kit);
 
         if (afterLoad != null) {
             afterLoad.run();
@@ -387,7 +262,7 @@ public class KitManager {
     }
 
     public boolean loadKit(Player player, int slot) {
-        return loadKitInternal(player, IDUtil.getPlayerKitId(player.getUniqueId(), slot), "Kit " + slot + " does not exist!", false, () -> {
+        return loadKitInternal(player, getPlayerKit(player.getUniqueId(), slot), "Kit " + slot + " does not exist!", false, () -> {
             BroadcastManager.get().broadcastPlayerLoadedPrivateKit(player);
             player.sendMessage(ChatColor.GREEN + "Kit " + slot + " loaded!");
             lastKitUsedByPlayer.put(player.getUniqueId(), slot);
@@ -395,11 +270,11 @@ public class KitManager {
     }
 
     public boolean loadKitSilent(Player player, int slot) {
-        return loadKitInternal(player, IDUtil.getPlayerKitId(player.getUniqueId(), slot), null, false, null);
+        return loadKitInternal(player, getPlayerKit(player.getUniqueId(), slot), null, false, null);
     }
 
     public boolean loadPublicKit(Player player, String id) {
-        return loadKitInternal(player, IDUtil.getPublicKitId(id), "Kit does not exist!", false, () -> {
+        return loadKitInternal(player, getPublicKit(id), "Kit does not exist!", false, () -> {
             BroadcastManager.get().broadcastPlayerLoadedPublicKit(player);
             player.sendMessage(ChatColor.GREEN + "Public Kit loaded!");
             player.sendMessage(ChatColor.GRAY + "You can save this kit by importing into the kit editor");
@@ -408,119 +283,390 @@ public class KitManager {
 
 
     public boolean loadPublicKitSilent(Player player, String id) {
-        return loadKitInternal(player, IDUtil.getPublicKitId(id), null, false, null);
+        return loadKitInternal(player, getPublicKit(id), null, false, null);
     }
 
 
     public boolean loadEnderchest(Player player, int slot) {
-        return loadKitInternal(player, IDUtil.getECId(player.getUniqueId(), slot), "Enderchest " + slot + " does not exist!", true, () -> {
+        return loadKitInternal(player, getPlayerEC(player.getUniqueId(), slot), "Enderchest " + slot + " does not exist!", true, () -> {
             BroadcastManager.get().broadcastPlayerLoadedEnderChest(player);
             player.sendMessage(ChatColor.GREEN + "Enderchest " + slot + " loaded!");
         });
     }
 
     public boolean loadEnderchestSilent(Player player, int slot) {
-        return loadKitInternal(player, IDUtil.getECId(player.getUniqueId(), slot), null, true, null);
+        return loadKitInternal(player, getPlayerEC(player.getUniqueId(), slot), null, true, null);
     }
 
 
     public boolean loadLastKit(Player player) {
-        if (lastKitUsedByPlayer.containsKey(player.getUniqueId())) {
-            return loadKit(player, lastKitUsedByPlayer.get(player.getUniqueId()));
+        Integer slot = lastKitUsedByPlayer.get(player.getUniqueId());
+        if (slot != null) {
+            return loadKit(player, slot);
         }
         return false;
     }
 
 
     public boolean hasKit(UUID uuid, int slot) {
-        return kitByKitIDMap.get(IDUtil.getPlayerKitId(uuid, slot)) != null;
+        PlayerKitData data = getKitData(uuid);
+        return data != null && data.hasKit(slot);
 
     }
 
     public boolean hasEC(UUID uuid, int slot) {
-        return kitByKitIDMap.get(IDUtil.getECId(uuid, slot)) != null;
+        PlayerKitData data = getKitData(uuid);
+        return data != null && data.hasEnderchest(slot);
 
     }
 
     public ItemStack[] getPlayerEC(UUID uuid, int slot) {
-        return kitByKitIDMap.get(IDUtil.getECId(uuid, slot));
+        PlayerKitData data = getKitData(uuid);
+        return data == null ? null : data.getEnderchest(slot);
     }
 
 
     public ItemStack[] getPlayerKit(UUID uuid, int slot) {
-        return kitByKitIDMap.get(IDUtil.getPlayerKitId(uuid, slot));
+        PlayerKitData data = getKitData(uuid);
+        return data == null ? null : data.getKit(slot);
+    }
+
+    private PlayerKitData getKitData(UUID uuid) {
+        PlayerKitData data = kitDataByPlayer.get(uuid);
+        return data != null ? data : offlineKitCache.peek(uuid);
+    }
+
+    //turns kits that have not been used for a while back into their stored bytes
+    public void releaseIdleKits() {
+        if (!lazyDecode || releaseDecodedAfterMillis <= 0) {
+            return;
+        }
+        long unusedSince = System.currentTimeMillis() - releaseDecodedAfterMillis;
+        kitDataByPlayer.values().forEach(data -> data.releaseIdleKits(unusedSince));
+    }
+
+    public List<String> getOfflineCacheStats() {
+        return offlineKitCache.getStats();
     }
 
     public boolean hasPublicKit(String id) {
-        return kitByKitIDMap.get(IDUtil.getPublicKitId(id)) != null;
+        return getPublicKit(id) != null;
 
     }
 
     public ItemStack[] getPublicKit(String id) {
-        return kitByKitIDMap.get(IDUtil.getPublicKitId(id));
+        return publicKitByName.get(id);
+    }
+
+    /**
+     * Loads a player's kits on the calling thread, used from AsyncPlayerPreLoginEvent so the kits are ready
+     * before the player is in the world.
+     */
+    public void preloadPlayerData(UUID uuid) {
+        CompletableFuture<Void> load = startLoad(uuid);
+        try {
+            loadPlayerDataFromDB(uuid);
+        } finally {
+            load.complete(null);
+        }
+    }
+
+    //loads a player's kits in the background, unless they are already being loaded
+    public void loadPlayerDataAsync(UUID uuid) {
+        if (pendingLoads.containsKey(uuid) || kitDataByPlayer.containsKey(uuid)) {
+            return;
+        }
+        CompletableFuture<Void> load = startLoad(uuid);
+        PerPlayerKit.getScheduler().runTaskAsynchronously(() -> {
+            try {
+                loadPlayerDataFromDB(uuid);
+            } finally {
+                load.complete(null);
+            }
+        });
+    }
+
+    /**
+     * Marks a player as loading, so actions passed to {@link #whenLoaded(Player, Runnable)} wait for the load.
+     *
+     * @return the load to complete once the player's kits are in, or null if they are loaded or loading already.
+     */
+    CompletableFuture<Void> startLoadIfAbsent(UUID uuid) {
+        if (pendingLoads.containsKey(uuid) || kitDataByPlayer.containsKey(uuid)) {
+            return null;
+        }
+        return startLoad(uuid);
+    }
+
+    private CompletableFuture<Void> startLoad(UUID uuid) {
+        CompletableFuture<Void> load = new CompletableFuture<>();
+        pendingLoads.put(uuid, load);
+        load.whenComplete((result, error) -> pendingLoads.remove(uuid, load));
+        return load;
+    }
+
+    /**
+     * Runs the action now if the player's kits are loaded, otherwise on the player's thread once they are.
+     * Used for anything a player can do right after joining, so it does not find their kits missing.
+     */
+    public void whenLoaded(Player player, Runnable action) {
+        CompletableFuture<Void> load = pendingLoads.get(player.getUniqueId());
+        if (load == null || load.isDone()) {
+            action.run();
+            return;
+        }
+        load.thenRun(() -> PerPlayerKit.getScheduler().runTask(player, action));
+    }
+
+    //drops kits preloaded for a player whose login was denied after AsyncPlayerPreLoginEvent
+    public void unloadPlayerData(UUID uuid) {
+        unloadIfOffline(uuid);
+    }
+
+    /**
+     * Unloads a player that is offline and not logging in, unless some of their kits are still waiting to be written.
+     * {@link KitSaveQueue} calls this again once it wrote them.
+     */
+    void unloadIfOffline(UUID uuid) {
+        if (Bukkit.getPlayer(uuid) != null || pendingLoads.containsKey(uuid)) {
+            return;
+        }
+        List<String> ids = playerKitIDs(uuid);
+        boolean[] unloaded = {false};
+        kitDataByPlayer.computeIfPresent(uuid, (k, data) -> {
+            if (ids.stream().anyMatch(KitSaveQueue.get()::isPending)) {
+                return data;
+            }
+            unloaded[0] = true;
+            return null;
+        });
+        if (unloaded[0]) {
+            KitSaveQueue.get().forgetVersions(ids);
+        }
     }
 
     public void loadPlayerDataFromDB(UUID uuid) {
-        for (int slot = 1; slot < 10; slot++) {
-            String data = PerPlayerKit.storageManager.getKitDataByID(IDUtil.getPlayerKitId(uuid, slot));
-            if (!data.equalsIgnoreCase("error")) {
-                try {
-                    ItemStack[] kit = Serializer.itemStackArrayFromBase64(data);
-                    kitByKitIDMap.put(IDUtil.getPlayerKitId(uuid, slot), ItemFilter.get().filterItemStack(Serializer.itemStackArrayFromBase64(data)));
-
-                } catch (IOException ignored) {
-                }
+        putPlayerData(uuid, fetchPlayerData(List.of(uuid)));
+    }
+
+    /**
+     * Reads the kits of several players in one call, used to load many players at once. The result is passed to
+     * {@link #putPlayerData(UUID, Map)} for each player, which can run on other threads.
+     *
+     * @return stored kits of all the players by id.
+     */
+    public Map<String, byte[]> fetchPlayerData(Collection<UUID> uuids) {
+        List<String> ids = new ArrayList<>(uuids.size() * PlayerKitData.SLOTS * 2);
+        for (UUID uuid : uuids) {
+            offlineKitCache.invalidate(uuid);
+            ids.addAll(playerKitIDs(uuid));
+        }
+        return KitSaveQueue.get().readTracked(ids);
+    }
+
+    //loads a player's kits from the result of fetchPlayerData, decoding them unless lazy-decode is on
+    public void putPlayerData(UUID uuid, Map<String, byte[]> stored) {
+        putPlayerData(uuid, stored, false);
+    }
+
+    /**
+     * Loads a player's kits from the result of {@link #fetchPlayerData}.
+     *
+     * @param decode decode the kits now, on the calling thread, even if lazy-decode is on
+     */
+    public void putPlayerData(UUID uuid, Map<String, byte[]> stored, boolean decode) {
+        PlayerKitData loaded = playerDataFrom(uuid, stored);
+        if (decode) {
+            loaded.decodeAll();
+        }
+        kitDataByPlayer.compute(uuid, (k, current) -> {
+            if (current == null) {
+                return loaded;
             }
+            // kits changed here that are not written yet are newer than the stored ones, every other slot is
+            // replaced, including slots that were deleted from storage
+            KitSaveQueue queue = KitSaveQueue.get();
+            return current.withStoredFrom(loaded,
+                    slot -> queue.isPending(IDUtil.getPlayerKitId(uuid, slot)),
+                    slot -> queue.isPending(IDUtil.getECId(uuid, slot)));
+        });
+    }
+
+    //loads a player that is not online into the offline cache, if they are not loaded already
+    public void loadOfflinePlayerData(UUID uuid) {
+        if (kitDataByPlayer.containsKey(uuid) || offlineKitCache.get(uuid) != null) {
+            return;
         }
-        for (int slot = 1; slot < 10; slot++) {
-            String data = PerPlayerKit.storageManager.getKitDataByID(IDUtil.getECId(uuid, slot));
-            if (!data.equalsIgnoreCase("error")) {
-                try {
-                    ItemStack[] kit = Serializer.itemStackArrayFromBase64(data);
-                    kitByKitIDMap.put(IDUtil.getECId(uuid, slot), ItemFilter.get().filterItemStack(Serializer.itemStackArrayFromBase64(data)));
+        PlayerKitData loaded = readPlayerData(uuid);
+        if (!kitDataByPlayer.containsKey(uuid)) {
+            offlineKitCache.put(uuid, loaded);
+        }
+    }
 
-                } catch (IOException ignored) {
-                }
+    private PlayerKitData readPlayerData(UUID uuid) {
+        return playerDataFrom(uuid, PerPlayerKit.storageManager.getKitBytesByIDs(playerKitIDs(uuid)));
+    }
+
+    //a player without stored kits gets empty data rather than null, so they count as loaded and are not read again
+    private PlayerKitData playerDataFrom(UUID uuid, Map<String, byte[]> stored) {
+        PlayerKitData loaded = PlayerKitData.EMPTY;
+        // lazily decoded kits are decoded on whichever thread uses them first, often the main thread. Everything
+        // they refer to is loaded now, off the main thread, so decoding them later never reads storage
+        Set<Integer> templateSets = new HashSet<>();
+        for (int slot = 1; slot <= PlayerKitData.SLOTS; slot++) {
+            byte[] kitData = stored.get(IDUtil.getPlayerKitId(uuid, slot));
+            byte[] ecData = stored.get(IDUtil.getECId(uuid, slot));
+            if (kitData == null && ecData == null) {
+                continue;
+            }
+            if (lazyDecode) {
+                loaded = loaded.withStoredKit(slot, kitData).withStoredEnderchest(slot, ecData);
+                addTemplateSet(templateSets, kitData);
+                addTemplateSet(templateSets, ecData);
+                continue;
+            }
+            ItemStack[] kit = deserialize(kitData);
+            if (kit != null) {
+                loaded = loaded.withKit(slot, kit);
+            }
+            ItemStack[] enderchest = deserialize(ecData);
+            if (enderchest != null) {
+                loaded = loaded.withEnderchest(slot, enderchest);
+            }
+        }
+        KitTemplates.get().preloadSets(templateSets);
+        return loaded;
+    }
+
+    //reading the set id also loads the kit's compression dictionary, if it is not cached yet
+    private static void addTemplateSet(Set<Integer> templateSets, byte[] data) {
+        if (data == null) {
+            return;
+        }
+        try {
+            Integer setId = Serializer.templateSetIdOf(data);
+            if (setId != null) {
+                templateSets.add(setId);
             }
+        } catch (IOException | IllegalArgumentException ignored) {
+            // the kit is unreadable, decoding it reports that
         }
     }
 
+    //writes the player's changed kits immediately, then unloads them if they are offline. Kits that were not changed
+    //are not written, kits whose write failed stay loaded until the queue has written them
     public void savePlayerKitsToDB(UUID uuid) {
-        for (int i = 1; i < 10; i++) {
-            saveKitToDB(IDUtil.getPlayerKitId(uuid, i), true);
-            saveKitToDB(IDUtil.getECId(uuid, i), true);
+        KitSaveQueue.get().writeNow(playerKitIDs(uuid));
+        unloadIfOffline(uuid);
+    }
+
+    private static List<String> playerKitIDs(UUID uuid) {
+        List<String> ids = new ArrayList<>(PlayerKitData.SLOTS * 2);
+        for (int i = 1; i <= PlayerKitData.SLOTS; i++) {
+            ids.add(IDUtil.getPlayerKitId(uuid, i));
+            ids.add(IDUtil.getECId(uuid, i));
         }
+        return ids;
     }
 
+    //queued, the kit is written by KitSaveQueue
     public void savePlayerKitToDB(UUID uuid, int slot) {
-        saveKitToDB(IDUtil.getPlayerKitId(uuid, slot), false);
+        if (hasKit(uuid, slot)) {
+            KitSaveQueue.get().markDirty(IDUtil.getPlayerKitId(uuid, slot));
+        }
     }
 
     public void saveEnderchestToDB(UUID uuid, int slot) {
-        saveKitToDB(IDUtil.getECId(uuid, slot), false);
+        if (hasEC(uuid, slot)) {
+            KitSaveQueue.get().markDirty(IDUtil.getECId(uuid, slot));
+        }
     }
 
     public void savePublicKitToDB(String id) {
-        saveKitToDB(IDUtil.getPublicKitId(id), false);
+        if (hasPublicKit(id)) {
+            KitSaveQueue.get().markDirty(IDUtil.getPublicKitId(id));
+        }
     }
 
-    private void saveKitToDB(String key, boolean removeAfterSave) {
-        if (kitByKitIDMap.get(key) != null) {
-            PerPlayerKit.storageManager.saveKitDataByID(key, Serializer.itemStackArrayToBase64(ItemFilter.get().filterItemStack(kitByKitIDMap.get(key))));
-            if (removeAfterSave) {
-                kitByKitIDMap.remove(key);
+
+    public void unloadKit(String id) {
+        KitKey key = KitKey.parse(id);
+        if (key != null) {
+            if (key.player != null) {
+                offlineKitCache.invalidate(key.player);
             }
+            replaceLoadedKit(key, null);
+        }
+    }
 
+    //reloads the kits that are loaded on this server, used when another server changed them. Kits with a local edit
+    //waiting in KitSaveQueue are kept, the edit is written with compare-and-set and reloads the kit if it loses
+    public void reloadKitsFromDB(Collection<String> ids) {
+        for (String id : ids) {
+            KitKey key = KitKey.parse(id);
+            if (key != null && key.player != null) {
+                offlineKitCache.invalidate(key.player);
+            }
+        }
+        List<String> loaded = ids.stream().filter(id -> {
+            KitKey key = KitKey.parse(id);
+            return key != null && isLoaded(key) && !KitSaveQueue.get().isPending(id);
+        }).toList();
+        if (loaded.isEmpty()) {
+            return;
         }
+
+        Map<String, byte[]> stored;
+        try {
+            stored = KitSaveQueue.get().readTracked(loaded);
+        } catch (StorageReadException e) {
+            // the loaded kits are kept, they are reloaded again on the next change from another server
+            plugin.getLogger().warning("Failed to reload " + loaded.size() + " kits: " + e.getMessage());
+            return;
+        }
+        for (String id : loaded) {
+            KitKey key = KitKey.parse(id);
+            byte[] data = stored.get(id);
+            if (KitSaveQueue.get().isPending(id)) {
+                // edited while this was reading
+                continue;
+            }
+            if (data == null) {
+                replaceLoadedKit(key, null);
+                continue;
+            }
+            try {
+                replaceLoadedKit(key, decodeKit(data));
+            } catch (IOException e) {
+                plugin.getLogger().warning("Error reloading kit " + id);
+            }
+        }
+    }
+
+    public void loadPublicKitsFromDB(Collection<String> ids) {
+        loadPublicKitsFromDB(ids, Runnable::run);
     }
 
+    //fetches the public kits in one call and decodes each of them on the executor, returns once all are loaded
+    public void loadPublicKitsFromDB(Collection<String> ids, Executor decoder) {
+        Map<String, String> idByKitId = new HashMap<>();
+        ids.forEach(id -> idByKitId.put(IDUtil.getPublicKitId(id), id));
+
+        Map<String, byte[]> stored = PerPlayerKit.storageManager.getKitBytesByIDs(idByKitId.keySet());
+        CompletableFuture.allOf(stored.entrySet().stream().map(entry -> CompletableFuture.runAsync(() -> {
+            try {
+                publicKitByName.put(idByKitId.get(entry.getKey()), decodeKit(entry.getValue()));
+            } catch (IOException ignored) {
+                plugin.getLogger().info("Error loading public kit " + idByKitId.get(entry.getKey()));
+            }
+        }, decoder)).toArray(CompletableFuture[]::new)).join();
+    }
 
     public void loadPublicKitFromDB(String id) {
-        String data = PerPlayerKit.storageManager.getKitDataByID(IDUtil.getPublicKitId(id));
-        if (!data.equalsIgnoreCase("error")) {
+        byte[] data = PerPlayerKit.storageManager.getKitBytesByID(IDUtil.getPublicKitId(id));
+        if (data != null) {
             try {
-                ItemStack[] kit = Serializer.itemStackArrayFromBase64(data);
-                kitByKitIDMap.put(IDUtil.getPublicKitId(id), ItemFilter.get().filterItemStack(kit));
+                publicKitByName.put(id, decodeKit(data));
 
             } catch (IOException ignored) {
                 plugin.getLogger().info("Error loading public kit " + id);
@@ -529,17 +675,34 @@ public class KitManager {
     }
 
 
-    //removes kit from kitByKitIDMap and deletes it from the database
+    //unloads the kit and deletes it from the database
     public boolean deleteKit(UUID uuid, int slot) {
         if (hasKit(uuid, slot)) {
-            kitByKitIDMap.remove(IDUtil.getPlayerKitId(uuid, slot));
-            PerPlayerKit.getScheduler().runTaskAsynchronously(() -> PerPlayerKit.storageManager.deleteKitByID(IDUtil.getPlayerKitId(uuid, slot)));
+            kitDataByPlayer.computeIfPresent(uuid, (k, data) -> data.withKit(slot, null));
+            KitSaveQueue.get().markDeleted(IDUtil.getPlayerKitId(uuid, slot));
             return true;
         }
         return false;
     }
 
 
+    private ItemStack[] deserialize(byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        try {
+            return decodeKit(data);
+        } catch (IOException ignored) {
+            return null;
+        }
+    }
+
+    //decodes a stored kit, runs it through the item filter and shares its items with other kits
+    static ItemStack[] decodeKit(byte[] data) throws IOException {
+        return ItemInterner.get().intern(ItemFilter.get().filterItemStack(Serializer.itemStackArrayFromBytes(data)));
+    }
+
+
     private void applyKitLoadEffects(Player player, boolean isEnderChest) {
 
         if (player.isDead()) {
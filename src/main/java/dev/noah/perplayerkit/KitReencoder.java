@@ -0,0 +1,199 @@
+/*
+ * Copyright 2022-2025 Noah Ross
+ *
+ * This file is part of PerPlayerKit.
+ *
+ * PerPlayerKit is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * PerPlayerKit is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with PerPlayerKit. If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.noah.perplayerkit;
+
+import com.github.Anon8281.universalScheduler.scheduling.tasks.MyScheduledTask;
+import dev.noah.perplayerkit.storage.KitKey;
+import dev.noah.perplayerkit.storage.StorageManager;
+import dev.noah.perplayerkit.storage.exceptions.StorageReadException;
+import dev.noah.perplayerkit.util.IDUtil;
+import dev.noah.perplayerkit.util.Serializer;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.plugin.Plugin;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Rewrites kits stored with the Bukkit item codec in the Paper codec, in the background. Stored kits are scanned once
+ * for the ones in the old format, which are then rewritten {@code storage.reencode-batch-size} at a time every
+ * {@code storage.reencode-interval} ticks. A kit is only replaced if it was not saved in the meantime, see
+ * {@link StorageManager#replaceKitBytesIfUnchanged(Map, Map)}. Once every kit has been checked and rewritten a marker
+ * is stored so later starts skip the scan. A run that could not read every kit stores no marker, so the next run
+ * scans again.
+ */
+public class KitReencoder {
+
+    private static final String DONE_MARKER = IDUtil.getMarkerId("paper-codec");
+
+    private static KitReencoder instance;
+    private final Plugin plugin;
+    private final int batchSize;
+    private final int interval;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final AtomicBoolean busy = new AtomicBoolean(false);
+    private final Queue<String> remaining = new ConcurrentLinkedQueue<>();
+    private MyScheduledTask task;
+
+    private volatile long reencoded;
+    private volatile long skipped;
+    private volatile long failed;
+
+    public KitReencoder(Plugin plugin) {
+        this.plugin = plugin;
+        this.batchSize = Math.max(1, plugin.getConfig().getInt("storage.reencode-batch-size", 100));
+        this.interval = Math.max(1, plugin.getConfig().getInt("storage.reencode-interval", 20));
+        instance = this;
+    }
+
+    public static KitReencoder get() {
+        if (instance == null) {
+            throw new IllegalStateException("KitReencoder has not been initialized yet!");
+        }
+        return instance;
+    }
+
+    /**
+     * Starts re-encoding in the background, unless the Paper codec is not in use or a run is already going.
+     *
+     * @param force scan the kits even if an earlier run already finished
+     * @return true if a run was started
+     */
+    public boolean start(boolean force) {
+        if (!Serializer.isPaperCodec() || !running.compareAndSet(false, true)) {
+            return false;
+        }
+        reencoded = 0;
+        skipped = 0;
+        failed = 0;
+
+        PerPlayerKit.getScheduler().runTaskAsynchronously(() -> {
+            if (!force && PerPlayerKit.storageManager.doesKitExistByID(DONE_MARKER)) {
+                running.set(false);
+                return;
+            }
+            try {
+                scan();
+            } catch (StorageReadException e) {
+                plugin.getLogger().warning("Kit re-encoding stopped, the stored kits could not be scanned: " + e.getMessage());
+                remaining.clear();
+                running.set(false);
+                return;
+            }
+            if (remaining.isEmpty()) {
+                finish();
+                return;
+            }
+            plugin.getLogger().info("Re-encoding " + remaining.size() + " kits with the Paper item codec in the background.");
+            task = PerPlayerKit.getScheduler().runTaskTimerAsynchronously(this::reencodeBatch, interval, interval);
+        });
+        return true;
+    }
+
+    public List<String> getStats() {
+        return List.of(
+                "Item codec: " + (Serializer.isPaperCodec() ? "paper" : "bukkit"),
+                "Re-encoding: " + (running.get() ? remaining.size() + " kits left" : "not running"),
+                "Re-encoded: " + reencoded + ", changed while re-encoding: " + skipped + ", unreadable: " + failed);
+    }
+
+    private void scan() {
+        PerPlayerKit.storageManager.forEachKit((kitID, data) -> {
+            if (KitKey.parse(kitID) == null) {
+                return;
+            }
+            try {
+                if (!Serializer.isPaperFormat(Serializer.toRawBytes(data))) {
+                    remaining.add(kitID);
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                failed++;
+            }
+        });
+    }
+
+    private void reencodeBatch() {
+        if (!busy.compareAndSet(false, true)) {
+            return;
+        }
+
+        List<String> batch = new ArrayList<>(batchSize);
+        try {
+            while (batch.size() < batchSize) {
+                String kitID = remaining.poll();
+                if (kitID == null) {
+                    break;
+                }
+                // a queued save writes the kit in the new format anyway
+                if (!KitSaveQueue.get().isPending(kitID)) {
+                    batch.add(kitID);
+                }
+            }
+
+            Map<String, byte[]> stored = PerPlayerKit.storageManager.getKitBytesByIDs(batch);
+            Map<String, byte[]> updated = new HashMap<>();
+            stored.forEach((kitID, data) -> {
+                try {
+                    if (!Serializer.isPaperFormat(Serializer.toRawBytes(data))) {
+                        ItemStack[] items = Serializer.itemStackArrayFromBytes(data);
+                        // kit room pages are what the templates are built from, so they never refer to them
+                        boolean kitRoom = KitKey.parse(kitID).type == KitKey.Type.KITROOM;
+                        updated.put(kitID, kitRoom ? Serializer.itemStackArrayToBytes(items) : Serializer.kitToBytes(items));
+                    }
+                } catch (IOException | RuntimeException e) {
+                    failed++;
+                }
+            });
+
+            int replaced = updated.isEmpty() ? 0 : PerPlayerKit.storageManager.replaceKitBytesIfUnchanged(updated, stored);
+            reencoded += replaced;
+            skipped += updated.size() - replaced;
+
+            if (remaining.isEmpty()) {
+                finish();
+            }
+        } catch (Exception e) {
+            plugin.getLogger().warning("Kit re-encoding batch failed, retrying: " + e.getMessage());
+            remaining.addAll(batch);
+        } finally {
+            busy.set(false);
+        }
+    }
+
+    private void finish() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        if (failed == 0) {
+            try {
+                PerPlayerKit.storageManager.saveKitBytesByID(DONE_MARKER, new byte[]{1});
+            } catch (RuntimeException e) {
+                // the next start scans again and finds nothing left to re-encode
+                plugin.getLogger().warning("Failed to mark kit re-encoding as complete: " + e.getMessage());
+            }
+        }
+        plugin.getLogger().info("Kit re-encoding complete, " + reencoded + " kits re-encoded"
+                + (skipped > 0 ? ", " + skipped + " were saved in the meantime" : "")
+                + (failed > 0 ? ", " + failed + " could not be read and are checked again on the next run" : "") + ".");
+        running.set(false);
+    }
+}
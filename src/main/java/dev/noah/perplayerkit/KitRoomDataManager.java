@@ -20,7 +20,10 @@ package dev.noah.perplayerkit;
 
 import com.github.Anon8281.universalScheduler.UniversalRunnable;
 import dev.noah.perplayerkit.gui.ItemUtil;
+import dev.noah.perplayerkit.storage.exceptions.StorageWriteException;
+import dev.noah.perplayerkit.util.CompressionManager;
 import dev.noah.perplayerkit.util.IDUtil;
+import dev.noah.perplayerkit.util.KitTemplates;
 import dev.noah.perplayerkit.util.Serializer;
 import org.bukkit.Material;
 import org.bukkit.inventory.ItemStack;
@@ -28,6 +31,8 @@ import org.bukkit.plugin.Plugin;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 public class KitRoomDataManager {
 
@@ -64,9 +69,7 @@ public class KitRoomDataManager {
     public void setKitRoom(int page, ItemStack[] data) {
         kitroomData.set(page, data);
 
-        ItemFilter.get().clearWhitelist();
-
-        ItemFilter.get().addToWhitelist(kitroomData);
+        ItemFilter.get().setWhitelist(kitroomData);
 
     }
 
@@ -74,17 +77,16 @@ public class KitRoomDataManager {
         return kitroomData.get(page);
     }
 
+    //the pages are written by KitSaveQueue like other kits, so a failed write is retried
     public void saveToDBAsync() {
+        for (int i = 0; i < 5; i++) {
+            KitSaveQueue.get().markDirty(IDUtil.getKitRoomId(i));
+        }
         new UniversalRunnable() {
 
             @Override
             public void run() {
-
-                for (int i = 0; i < 5; i++) {
-                    ItemStack[] pagedata = kitroomData.get(i);
-                    String output = Serializer.itemStackArrayToBase64(pagedata);
-                    PerPlayerKit.storageManager.saveKitDataByID(IDUtil.getKitRoomId(i), output);
-                }
+                updateEncoding();
             }
 
         }.runTaskAsynchronously(plugin);
@@ -93,12 +95,16 @@ public class KitRoomDataManager {
     }
 
     public void loadFromDB() {
-        ItemFilter.get().clearWhitelist();
+        List<String> ids = new ArrayList<>(5);
         for (int i = 0; i < 5; i++) {
-            String input = PerPlayerKit.storageManager.getKitDataByID(IDUtil.getKitRoomId(i));
-            if (!input.equalsIgnoreCase("error")) {
+            ids.add(IDUtil.getKitRoomId(i));
+        }
+        Map<String, byte[]> stored = PerPlayerKit.storageManager.getKitBytesByIDs(ids);
+        for (int i = 0; i < 5; i++) {
+            byte[] input = stored.get(IDUtil.getKitRoomId(i));
+            if (input != null) {
                 try {
-                    ItemStack[] pagedata = Serializer.itemStackArrayFromBase64(input);
+                    ItemStack[] pagedata = Serializer.itemStackArrayFromBytes(input);
                     kitroomData.set(i, pagedata);
 
                 } catch (IOException e) {
@@ -106,7 +112,23 @@ public class KitRoomDataManager {
                 }
             }
         }
-        ItemFilter.get().addToWhitelist(kitroomData);
+        // kits are filtered while this runs, the old whitelist stays in use until the new one is complete
+        ItemFilter.get().setWhitelist(kitroomData);
+        updateEncoding();
+    }
+
+    //rebuilds the compression dictionary and kit templates from the kit room, each is stored before it is used
+    private void updateEncoding() {
+        try {
+            CompressionManager.get().updateDictionary(kitroomData);
+        } catch (StorageWriteException e) {
+            plugin.getLogger().warning("Failed to save the compression dictionary, the previous one stays in use: " + e.getMessage());
+        }
+        try {
+            KitTemplates.get().update(kitroomData);
+        } catch (StorageWriteException e) {
+            plugin.getLogger().warning("Failed to save the kit templates, the previous ones stay in use: " + e.getMessage());
+        }
     }
 
 }
@@ -0,0 +1,342 @@
+/*
+ * Copyright 2022-2025 Noah Ross
+ *
+ * This file is part of PerPlayerKit.
+ *
+ * PerPlayerKit is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * PerPlayerKit is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with PerPlayerKit. If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.noah.perplayerkit;
+
+import com.github.Anon8281.universalScheduler.scheduling.tasks.MyScheduledTask;
+import dev.noah.perplayerkit.storage.InvalidationBus;
+import dev.noah.perplayerkit.storage.KitKey;
+import dev.noah.perplayerkit.util.Serializer;
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.plugin.Plugin;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind queue for kit saves. Saves and deletes mark a kit id as pending, a single async worker writes the
+ * pending kits in batches. Marking an id that is already pending replaces the queued operation, so a kit that is
+ * edited many times between flushes is written once with its latest contents. Operations whose write fails are put
+ * back and tried again on the next flush.
+ * <p>
+ * When the backend keeps kit versions, the queue remembers the version each loaded player kit was read at and writes
+ * it with compare-and-set. If another server wrote the kit in the meantime the write is dropped and the kit is
+ * reloaded, so a late quit save from another server can not overwrite a newer edit. A kit that was edited again
+ * locally while the rejected write was in flight is not reloaded, the newer edit is written over the stored version.
+ */
+public class KitSaveQueue {
+
+    private enum Operation {SAVE, DELETE}
+
+    private static final int SHUTDOWN_ATTEMPTS = 3;
+    private static KitSaveQueue instance;
+    private final Plugin plugin;
+    private final int interval;
+    private final int batchSize;
+    private final Map<String, Operation> pending = new ConcurrentHashMap<>();
+    // taken from pending and being written right now
+    private final Set<String> writing = ConcurrentHashMap.newKeySet();
+    // version each loaded player kit was last read or written at, 0 if it does not exist
+    private final Map<String, Long> versions = new ConcurrentHashMap<>();
+    // held while writing so a flush never races a quit save of the same kit
+    private final Object writeLock = new Object();
+    private MyScheduledTask task;
+
+    // updated from every thread that saves a kit, read by the stats command
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong conflicts = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    // only written while holding writeLock
+    private volatile long flushes;
+    private volatile long lastFlushNanos;
+    private volatile long maxFlushNanos;
+    private volatile long totalFlushNanos;
+
+    public KitSaveQueue(Plugin plugin) {
+        this.plugin = plugin;
+        this.interval = Math.max(1, plugin.getConfig().getInt("storage.write-behind-interval", 40));
+        this.batchSize = Math.max(1, plugin.getConfig().getInt("storage.write-behind-batch-size", 200));
+        instance = this;
+    }
+
+    public static KitSaveQueue get() {
+        if (instance == null) {
+            throw new IllegalStateException("KitSaveQueue has not been initialized yet!");
+        }
+        return instance;
+    }
+
+    public void start() {
+        task = PerPlayerKit.getScheduler().runTaskTimerAsynchronously(this::flushBatch, interval, interval);
+    }
+
+    /**
+     * Stops the worker and writes everything that is still pending on the calling thread. Writes that fail are tried
+     * again a few times, kits that still could not be written are logged.
+     */
+    public void shutdown() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        synchronized (writeLock) {
+            for (int attempt = 0; attempt < SHUTDOWN_ATTEMPTS && !pending.isEmpty(); attempt++) {
+                List<String> kitIDs = new ArrayList<>(pending.keySet());
+                for (int i = 0; i < kitIDs.size(); i += batchSize) {
+                    write(take(kitIDs.subList(i, Math.min(i + batchSize, kitIDs.size())), batchSize));
+                }
+            }
+            if (!pending.isEmpty()) {
+                plugin.getLogger().severe("Could not write " + pending.size() + " kits before shutting down, their latest changes are lost: " + String.join(", ", pending.keySet()));
+            }
+        }
+    }
+
+    public void markDirty(String kitID) {
+        if (pending.put(kitID, Operation.SAVE) != null) {
+            coalesced.incrementAndGet();
+        }
+    }
+
+    public void markDeleted(String kitID) {
+        if (pending.put(kitID, Operation.DELETE) != null) {
+            coalesced.incrementAndGet();
+        }
+    }
+
+    /**
+     * Writes the pending operations for the given kits now, on the calling thread. Kits that are not pending have
+     * not changed since they were last written and are skipped.
+     *
+     * @param kitIDs kits to write
+     */
+    public void writeNow(Collection<String> kitIDs) {
+        synchronized (writeLock) {
+            write(take(kitIDs, Integer.MAX_VALUE));
+        }
+    }
+
+    /**
+     * Reads kits from storage, remembering the stored version of the player kits among them so later writes of them
+     * are made with compare-and-set. Use this instead of reading the kits directly when they are being loaded.
+     *
+     * @param kitIDs kits that are being loaded
+     * @return map of id to data, ids that do not exist are left out
+     */
+    public Map<String, byte[]> readTracked(Collection<String> kitIDs) {
+        if (!PerPlayerKit.storageManager.supportsKitVersions()) {
+            return PerPlayerKit.storageManager.getKitBytesByIDs(kitIDs);
+        }
+        Map<String, Long> stored = new HashMap<>();
+        Map<String, byte[]> kits = PerPlayerKit.storageManager.getKitBytesWithVersions(kitIDs, stored);
+        for (String kitID : kitIDs) {
+            KitKey key = KitKey.parse(kitID);
+            if (key != null && key.player != null) {
+                versions.put(kitID, stored.getOrDefault(kitID, 0L));
+            }
+        }
+        return kits;
+    }
+
+    public void forgetVersions(Collection<String> kitIDs) {
+        kitIDs.forEach(versions::remove);
+    }
+
+    /**
+     * @return whether the kit has a change that is not written yet, queued or being written right now
+     */
+    public boolean isPending(String kitID) {
+        return pending.containsKey(kitID) || writing.contains(kitID);
+    }
+
+    public int getQueueDepth() {
+        return pending.size();
+    }
+
+    public List<String> getStats() {
+        List<String> stats = new ArrayList<>();
+        stats.add("Queue depth: " + pending.size() + " (batch size " + batchSize + ", every " + interval + " ticks)");
+        stats.add("Kits written: " + written.get() + ", coalesced writes: " + coalesced.get() + ", version conflicts: " + conflicts.get()
+                + ", failed writes: " + failed.get() + ", dropped saves: " + dropped.get());
+        stats.add(String.format("Flush latency: last %.1f ms, avg %.1f ms, max %.1f ms", lastFlushNanos / 1e6,
+                flushes == 0 ? 0 : totalFlushNanos / 1e6 / flushes, maxFlushNanos / 1e6));
+        return stats;
+    }
+
+    private void flushBatch() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        synchronized (writeLock) {
+            write(take(pending.keySet(), batchSize));
+        }
+    }
+
+    private Map<String, Operation> take(Collection<String> kitIDs, int limit) {
+        Map<String, Operation> ops = new HashMap<>();
+        Iterator<String> iterator = new ArrayList<>(kitIDs).iterator();
+        while (iterator.hasNext() && ops.size() < limit) {
+            String kitID = iterator.next();
+            // marked as being written before it leaves pending, so isPending never misses it
+            writing.add(kitID);
+            Operation op = pending.remove(kitID);
+            if (op != null) {
+                ops.put(kitID, op);
+            } else {
+                writing.remove(kitID);
+            }
+        }
+        return ops;
+    }
+
+    private void write(Map<String, Operation> ops) {
+        if (ops.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+
+        Map<String, byte[]> saves = new HashMap<>();
+        Map<String, Long> expected = new HashMap<>();
+        List<String> deletes = new ArrayList<>();
+        List<String> missing = new ArrayList<>();
+        Set<String> rejected;
+        try {
+            ops.forEach((kitID, op) -> {
+                if (op == Operation.DELETE) {
+                    deletes.add(kitID);
+                    return;
+                }
+                ItemStack[] kit = KitManager.get().getItemStackArrayById(kitID);
+                if (kit != null && isKitRoomPage(kitID)) {
+                    // kit room pages are what the item filter and the templates are built from
+                    saves.put(kitID, Serializer.itemStackArrayToBytes(kit));
+                } else if (kit != null) {
+                    saves.put(kitID, Serializer.kitToBytes(ItemFilter.get().filterItemStack(kit)));
+                    Long version = versions.get(kitID);
+                    if (version != null) {
+                        expected.put(kitID, version);
+                    }
+                } else {
+                    missing.add(kitID);
+                }
+            });
+            rejected = writeKits(ops, saves, expected, deletes);
+        } finally {
+            writing.removeAll(ops.keySet());
+        }
+
+        if (!missing.isEmpty()) {
+            dropped.addAndGet(missing.size());
+            plugin.getLogger().warning(missing.size() + " kits were saved but are no longer loaded, their save was dropped: " + String.join(", ", missing));
+        }
+
+        expected.forEach((kitID, version) -> {
+            if (!rejected.contains(kitID)) {
+                versions.replace(kitID, version, version + 1);
+            }
+        });
+        deletes.forEach(kitID -> versions.replace(kitID, 0L));
+        if (!rejected.isEmpty()) {
+            conflicts.addAndGet(rejected.size());
+            saves.keySet().removeAll(rejected);
+            resolveConflicts(rejected);
+        }
+
+        InvalidationBus.get().publishSaved(saves.keySet());
+        InvalidationBus.get().publishDeleted(deletes);
+
+        // players that left while their kits were still queued are unloaded once everything is written
+        ops.keySet().stream().map(KitKey::parse).filter(key -> key != null && key.player != null)
+                .map(key -> key.player).distinct().forEach(KitManager.get()::unloadIfOffline);
+
+        long elapsed = System.nanoTime() - start;
+        written.addAndGet(saves.size() + deletes.size());
+        flushes++;
+        lastFlushNanos = elapsed;
+        maxFlushNanos = Math.max(maxFlushNanos, elapsed);
+        totalFlushNanos += elapsed;
+    }
+
+    private static boolean isKitRoomPage(String kitID) {
+        KitKey key = KitKey.parse(kitID);
+        return key != null && key.type == KitKey.Type.KITROOM;
+    }
+
+    //saves and deletes are retried separately, a save that went through must not be sent again with its old version
+    private Set<String> writeKits(Map<String, Operation> ops, Map<String, byte[]> saves, Map<String, Long> expected, List<String> deletes) {
+        Set<String> rejected = Set.of();
+        if (!saves.isEmpty()) {
+            try {
+                rejected = PerPlayerKit.storageManager.saveKitBytesIfVersion(saves, expected);
+            } catch (RuntimeException e) {
+                retry(ops, saves.keySet(), e);
+                saves.clear();
+                expected.clear();
+            }
+        }
+        if (!deletes.isEmpty()) {
+            try {
+                PerPlayerKit.storageManager.deleteKitsByIDs(deletes);
+            } catch (RuntimeException e) {
+                retry(ops, deletes, e);
+                deletes.clear();
+            }
+        }
+        return rejected;
+    }
+
+    //a kit the player edited again after the rejected save keeps that newer edit, it is written against the stored
+    //version on the next flush. Only kits with nothing newer queued are reloaded, and their player is told about it
+    private void resolveConflicts(Set<String> rejected) {
+        List<String> reload = rejected.stream().filter(kitID -> !pending.containsKey(kitID)).toList();
+        if (!reload.isEmpty()) {
+            plugin.getLogger().warning(reload.size() + " kits were changed on another server since they were loaded, reloading them instead of saving: " + String.join(", ", reload));
+            KitManager.get().reloadKitsFromDB(reload);
+        }
+
+        // checked after the reload, which skips kits edited while it was reading
+        List<String> superseded = rejected.stream().filter(pending::containsKey).toList();
+        if (!superseded.isEmpty()) {
+            Map<String, Long> stored = PerPlayerKit.storageManager.getKitVersions(superseded);
+            superseded.forEach(kitID -> versions.put(kitID, stored.getOrDefault(kitID, 0L)));
+            plugin.getLogger().warning(superseded.size() + " kits were changed on another server since they were loaded, a newer local edit is queued and will replace them: " + String.join(", ", superseded));
+        }
+
+        for (String kitID : reload) {
+            KitKey key = KitKey.parse(kitID);
+            Player player = key == null || key.player == null || superseded.contains(kitID) ? null : Bukkit.getPlayer(key.player);
+            if (player != null) {
+                String kit = (key.type == KitKey.Type.ENDERCHEST ? "Enderchest " : "Kit ") + key.slot;
+                PerPlayerKit.getScheduler().runTask(player, () -> player.sendMessage(ChatColor.YELLOW + kit + " was changed on another server, your last edit to it was not saved."));
+            }
+        }
+    }
+
+    //puts failed operations back unless the kit was changed again in the meantime, the newer operation wins
+    private void retry(Map<String, Operation> ops, Collection<String> kitIDs, RuntimeException error) {
+        failed.addAndGet(kitIDs.size());
+        plugin.getLogger().warning("Failed to write " + kitIDs.size() + " kits, they will be retried: " + error.getMessage());
+        kitIDs.forEach(kitID -> pending.putIfAbsent(kitID, ops.get(kitID)));
+    }
+}
@@ -74,10 +74,11 @@ public class KitShareManager {
     public void shareKit(Player p, int slot) {
         UUID uuid = p.getUniqueId();
         KitManager kitManager = KitManager.get();
-        if (kitManager.hasKit(uuid, slot)) {
+        ItemStack[] kit = kitManager.getPlayerKit(uuid, slot);
+        if (kit != null) {
             String id = RandomStringUtils.randomAlphanumeric(6).toUpperCase();
 
-            if (kitShareMap.putIfAbsent(id, kitManager.getPlayerKit(uuid, slot).clone()) == null) {
+            if (kitShareMap.putIfAbsent(id, kit.clone()) == null) {
                 p.sendMessage(ChatColor.GREEN + "Use /copykit " + id + " to copy this kit");
                 p.sendMessage(ChatColor.GREEN + "Code expires in 15 minutes");
 
@@ -106,10 +107,11 @@ public class KitShareManager {
     public void shareEC(Player p, int slot) {
         UUID uuid = p.getUniqueId();
         KitManager kitManager = KitManager.get();
-        if (kitManager.hasEC(uuid, slot)) {
+        ItemStack[] kit = kitManager.getPlayerEC(uuid, slot);
+        if (kit != null) {
             String id = RandomStringUtils.randomAlphanumeric(6).toUpperCase();
 
-            if (kitShareMap.putIfAbsent(id, kitManager.getPlayerEC(uuid, slot).clone()) == null) {
+            if (kitShareMap.putIfAbsent(id, kit.clone()) == null) {
                 p.sendMessage(ChatColor.GREEN + "Use /copyEC " + id + " to copy this enderchest");
                 p.sendMessage(ChatColor.GREEN + "Code expires in 15 minutes");
 
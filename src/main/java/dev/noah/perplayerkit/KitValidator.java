@@ -0,0 +1,162 @@
+/*
+ * Copyright 2022-2025 Noah Ross
+ *
+ * This file is part of PerPlayerKit.
+ *
+ * PerPlayerKit is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * PerPlayerKit is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with PerPlayerKit. If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.noah.perplayerkit;
+
+import org.bukkit.Material;
+import org.bukkit.inventory.EquipmentSlot;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Checks a kit goes through before it is saved. The built in ones keep armor in the right armor slots and apply the
+ * {@link ItemFilter}, they run inline since every save goes through them. Other plugins can add their own with
+ * {@link #addCheck(Check)}, those run on each item after the built in ones.
+ */
+public class KitValidator {
+
+    public enum Kind {
+        KIT(41),
+        ENDERCHEST(27);
+
+        public final int size;
+
+        Kind(int size) {
+            this.size = size;
+        }
+    }
+
+    @FunctionalInterface
+    public interface Check {
+        /**
+         * @param kind  what is being saved
+         * @param index position of the item in the kit
+         * @param item  the item, never null
+         * @return the item to keep in its place, or null to remove it
+         */
+        ItemStack check(Kind kind, int index, ItemStack item);
+    }
+
+    private static final int FIRST_ARMOR_INDEX = 36;
+    // kit indexes 36 to 39, boots first
+    private static final EquipmentSlot[] ARMOR_SLOTS = {EquipmentSlot.FEET, EquipmentSlot.LEGS, EquipmentSlot.CHEST, EquipmentSlot.HEAD};
+    private static final Map<Material, EquipmentSlot> EQUIPMENT_SLOTS = classifyMaterials();
+
+    private static final Check[] NO_CHECKS = {};
+
+    private static KitValidator instance;
+    // null when anti-exploit filtering is off
+    private final ItemFilter filter;
+    // an array rather than a list, validate runs every check on every item and should not allocate
+    private volatile Check[] checks = NO_CHECKS;
+
+    public KitValidator() {
+        filter = ItemFilter.get().isEnabled() ? ItemFilter.get() : null;
+        instance = this;
+    }
+
+    public static KitValidator get() {
+        if (instance == null) {
+            throw new IllegalStateException("KitValidator has not been initialized yet!");
+        }
+        return instance;
+    }
+
+    public synchronized void addCheck(Check check) {
+        Check[] added = Arrays.copyOf(checks, checks.length + 1);
+        added[checks.length] = check;
+        checks = added;
+    }
+
+    /**
+     * Runs every check over the kit. The kit is cut or padded to the size of its kind first, if it already has that
+     * size it is changed in place.
+     *
+     * @param kind what is being saved
+     * @param kit  the items
+     * @return the checked kit, or null if no items are left in it
+     */
+    public ItemStack[] validate(Kind kind, ItemStack[] kit) {
+        ItemStack[] result = kit.length == kind.size ? kit : Arrays.copyOf(kit, kind.size);
+        if (kind == Kind.KIT) {
+            for (int i = 0; i < ARMOR_SLOTS.length; i++) {
+                ItemStack item = result[FIRST_ARMOR_INDEX + i];
+                if (item != null && EQUIPMENT_SLOTS.get(item.getType()) != ARMOR_SLOTS[i]) {
+                    result[FIRST_ARMOR_INDEX + i] = null;
+                }
+            }
+        }
+
+        Check[] checks = this.checks;
+        boolean empty = true;
+        for (int i = 0; i < result.length; i++) {
+            ItemStack item = result[i];
+            if (item == null) {
+                continue;
+            }
+            if (filter != null) {
+                item = filter.filterItem(item);
+            }
+            if (checks.length > 0) {
+                item = runChecks(checks, kind, i, item);
+            }
+            result[i] = item;
+            if (item != null) {
+                empty = false;
+            }
+        }
+        return empty ? null : result;
+    }
+
+    /**
+     * @return the armor slot the material is worn in, or null if it is not armor
+     */
+    public static EquipmentSlot getArmorSlot(Material material) {
+        return EQUIPMENT_SLOTS.get(material);
+    }
+
+    private static ItemStack runChecks(Check[] checks, Kind kind, int index, ItemStack item) {
+        for (Check check : checks) {
+            if (item == null) {
+                break;
+            }
+            item = check.check(kind, index, item);
+        }
+        return item;
+    }
+
+    private static Map<Material, EquipmentSlot> classifyMaterials() {
+        Map<Material, EquipmentSlot> slots = new EnumMap<>(Material.class);
+        for (Material material : Material.values()) {
+            String name = material.name();
+            if (name.contains("BOOTS")) {
+                slots.put(material, EquipmentSlot.FEET);
+            } else if (name.contains("LEGGINGS")) {
+                slots.put(material, EquipmentSlot.LEGS);
+            } else if (name.contains("CHESTPLATE") || name.contains("ELYTRA")) {
+                slots.put(material, EquipmentSlot.CHEST);
+            } else if (name.contains("HELMET")) {
+                slots.put(material, EquipmentSlot.HEAD);
+            }
+        }
+        return slots;
+    }
+}
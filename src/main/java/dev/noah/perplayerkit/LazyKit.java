@@ -0,0 +1,99 @@
+/*
+ * Copyright 2022-2025 Noah Ross
+ *
+ * This file is part of PerPlayerKit.
+ *
+ * PerPlayerKit is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * PerPlayerKit is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with PerPlayerKit. If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.noah.perplayerkit;
+
+import org.bukkit.inventory.ItemStack;
+
+import java.io.IOException;
+
+/**
+ * One kit slot. Kits loaded from storage keep their stored bytes and are only turned into ItemStacks the first
+ * time they are used. Once decoded they can be released back to the bytes after they have not been used for a
+ * while. Kits saved in game start out decoded and have no bytes, so they are never released.
+ */
+final class LazyKit {
+
+    private final byte[] data;
+    private volatile ItemStack[] items;
+    private volatile boolean unreadable;
+    private volatile long lastUsed;
+
+    private LazyKit(byte[] data, ItemStack[] items) {
+        this.data = data;
+        this.items = items;
+        this.lastUsed = System.currentTimeMillis();
+    }
+
+    static LazyKit of(ItemStack[] items) {
+        return items == null ? null : new LazyKit(null, items);
+    }
+
+    static LazyKit ofStored(byte[] data) {
+        return data == null ? null : new LazyKit(data, null);
+    }
+
+    /**
+     * @return the kit, decoded now if needed, or null if the stored bytes could not be read
+     */
+    ItemStack[] get() {
+        lastUsed = System.currentTimeMillis();
+        ItemStack[] current = items;
+        if (current != null || unreadable) {
+            return current;
+        }
+        synchronized (this) {
+            if (items == null && !unreadable) {
+                try {
+                    items = KitManager.decodeKit(data);
+                } catch (IOException | IllegalArgumentException e) {
+                    unreadable = true;
+                }
+            }
+            return items;
+        }
+    }
+
+    //the decoded kit, without decoding it
+    ItemStack[] peek() {
+        return items;
+    }
+
+    byte[] getData() {
+        return data;
+    }
+
+    boolean isUnreadable() {
+        return unreadable;
+    }
+
+    /**
+     * Drops the decoded kit if it was loaded from bytes and has not been used since the given time.
+     *
+     * @return true if it was released
+     */
+    boolean releaseIfIdle(long unusedSince) {
+        if (data == null || items == null || lastUsed > unusedSince) {
+            return false;
+        }
+        synchronized (this) {
+            items = null;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2022-2025 Noah Ross
+ *
+ * This file is part of PerPlayerKit.
+ *
+ * PerPlayerKit is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * PerPlayerKit is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with PerPlayerKit. If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.noah.perplayerkit;
+
+import dev.noah.perplayerkit.util.ItemInterner;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.plugin.Plugin;
+
+import java.util.*;
+
+/**
+ * Kits of players that are not online, loaded for commands like /inspectkit. Online players are kept by KitManager
+ * and never go through this cache.
+ * <p>
+ * Entries are evicted least recently used first once the estimated size of all cached kits goes over
+ * {@code offline-cache.max-size}, and expire {@code offline-cache.ttl} seconds after they were loaded. Kits are
+ * decoded before they are cached, a kit decoded later would grow the entry past the size it was counted at.
+ */
+public class OfflineKitCache {
+
+    private final long maxWeight;
+    private final long ttlMillis;
+    private final LinkedHashMap<UUID, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+
+    public OfflineKitCache(Plugin plugin) {
+        this.maxWeight = Math.max(0, plugin.getConfig().getLong("offline-cache.max-size", 16L * 1024 * 1024));
+        this.ttlMillis = Math.max(1, plugin.getConfig().getLong("offline-cache.ttl", 300)) * 1000;
+    }
+
+    public synchronized PlayerKitData get(UUID uuid) {
+        Entry entry = entries.get(uuid);
+        if (entry != null && System.currentTimeMillis() - entry.loadedAt > ttlMillis) {
+            remove(uuid);
+            expirations++;
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.data;
+    }
+
+    //like get, but does not count towards the hit and miss stats
+    public synchronized PlayerKitData peek(UUID uuid) {
+        if (entries.isEmpty()) {
+            return null;
+        }
+        Entry entry = entries.get(uuid);
+        return entry == null || System.currentTimeMillis() - entry.loadedAt > ttlMillis ? null : entry.data;
+    }
+
+    //decodes the kits on the calling thread, outside the lock
+    public void put(UUID uuid, PlayerKitData data) {
+        data.decodeAll();
+        long entryWeight = estimateWeight(data);
+        synchronized (this) {
+            remove(uuid);
+            if (entryWeight > maxWeight) {
+                return;
+            }
+            entries.put(uuid, new Entry(data, entryWeight, System.currentTimeMillis()));
+            weight += entryWeight;
+
+            Iterator<Map.Entry<UUID, Entry>> iterator = entries.entrySet().iterator();
+            while (weight > maxWeight && iterator.hasNext()) {
+                Entry eldest = iterator.next().getValue();
+                iterator.remove();
+                weight -= eldest.weight;
+                evictions++;
+            }
+        }
+    }
+
+    public synchronized void invalidate(UUID uuid) {
+        remove(uuid);
+    }
+
+    public synchronized List<String> getStats() {
+        long requests = hits + misses;
+        List<String> stats = new ArrayList<>();
+        stats.add("Offline players cached: " + entries.size() + String.format(" (%.1f of %.1f MiB)", weight / 1048576.0, maxWeight / 1048576.0));
+        stats.add(String.format("Hits: %d, misses: %d, hit rate: %.1f%%", hits, misses, requests == 0 ? 0 : hits * 100.0 / requests));
+        stats.add("Evicted: " + evictions + ", expired: " + expirations);
+        return stats;
+    }
+
+    private void remove(UUID uuid) {
+        Entry entry = entries.remove(uuid);
+        if (entry != null) {
+            weight -= entry.weight;
+        }
+    }
+
+    private static long estimateWeight(PlayerKitData data) {
+        long total = 0;
+        for (LazyKit kit : data.getKitSlots()) {
+            total += estimateWeight(kit);
+        }
+        for (LazyKit enderchest : data.getEnderchestSlots()) {
+            total += estimateWeight(enderchest);
+        }
+        return total;
+    }
+
+    //the stored bytes stay next to the decoded kit, both are counted
+    private static long estimateWeight(LazyKit kit) {
+        if (kit == null) {
+            return 0;
+        }
+        byte[] data = kit.getData();
+        return (data == null ? 0 : data.length) + estimateWeight(kit.peek());
+    }
+
+    private static long estimateWeight(ItemStack[] items) {
+        if (items == null) {
+            return 0;
+        }
+        long total = 16L + 8L * items.length;
+        for (ItemStack item : items) {
+            if (item != null) {
+                total += ItemInterner.estimateSize(item);
+            }
+        }
+        return total;
+    }
+
+    private static final class Entry {
+        final PlayerKitData data;
+        final long weight;
+        final long loadedAt;
+
+        Entry(PlayerKitData data, long weight, long loadedAt) {
+            this.data = data;
+            this.weight = weight;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
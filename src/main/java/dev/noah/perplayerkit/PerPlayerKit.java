@@ -30,11 +30,17 @@ import dev.noah.perplayerkit.listeners.*;
 import dev.noah.perplayerkit.listeners.antiexploit.CommandListener;
 import dev.noah.perplayerkit.listeners.antiexploit.ShulkerDropItemsListener;
 import dev.noah.perplayerkit.listeners.features.OldDeathDropListener;
+import dev.noah.perplayerkit.storage.InvalidationBus;
 import dev.noah.perplayerkit.storage.StorageManager;
 import dev.noah.perplayerkit.storage.StorageSelector;
 import dev.noah.perplayerkit.storage.exceptions.StorageConnectionException;
 import dev.noah.perplayerkit.storage.exceptions.StorageOperationException;
 import dev.noah.perplayerkit.util.BroadcastManager;
+import dev.noah.perplayerkit.util.CompressionManager;
+import dev.noah.perplayerkit.util.ItemInterner;
+import dev.noah.perplayerkit.util.KitApplier;
+import dev.noah.perplayerkit.util.KitTemplates;
+import dev.noah.perplayerkit.util.Serializer;
 import org.bstats.bukkit.Metrics;
 import org.bukkit.Bukkit;
 import org.bukkit.Material;
@@ -72,12 +78,26 @@ public final class PerPlayerKit extends JavaPlugin {
         configManager.loadConfig();
         MenuConfig.of(this);
 
+        boolean paperCodec = getConfig().getString("storage.item-codec", "paper").equalsIgnoreCase("paper");
+        if (Serializer.setPaperCodec(paperCodec) != paperCodec) {
+            getLogger().warning("storage.item-codec is set to paper, but this server does not support it. Using the bukkit codec.");
+        }
+
         new ItemFilter(this);
+        new KitValidator();
         new BroadcastManager(this);
+        new CompressionManager(this);
+        new KitTemplates(this);
+        new ItemInterner(this);
+        new KitApplier(this);
 
         new KitManager(this);
         new KitShareManager(this);
         new KitRoomDataManager(this);
+        new KitSaveQueue(this);
+        new KitReencoder(this);
+        new StartupLoader(this);
+        new InvalidationBus(this);
 
         loadPublicKitsIdsFromConfig();
         getLogger().info("Public Kit Configuration Loaded");
@@ -124,8 +144,15 @@ public final class PerPlayerKit extends JavaPlugin {
 
         }, 30 * 20, 30 * 20); //runs every 30 seconds
 
-        loadDatabaseData();
-        getLogger().info("Database data loaded");
+        KitSaveQueue.get().start();
+        // the scan for old kits waits so it does not compete with loading
+        StartupLoader.get().start().thenRun(() -> {
+            if (isEnabled() && getConfig().getBoolean("storage.reencode-on-startup", false)) {
+                KitReencoder.get().start(false);
+            }
+        });
+        InvalidationBus.get().start();
+        getScheduler().runTaskTimerAsynchronously(() -> KitManager.get().releaseIdleKits(), 60 * 20, 60 * 20);
 
         UpdateChecker updateChecker = new UpdateChecker(this);
 
@@ -184,6 +211,7 @@ public final class PerPlayerKit extends JavaPlugin {
         this.getCommand("perplayerkit").setExecutor(new PerPlayerKitCommand(this));
 
 
+        Bukkit.getPluginManager().registerEvents(new StartupCommandListener(this), this);
         Bukkit.getPluginManager().registerEvents(regearCommand, this);
         Bukkit.getPluginManager().registerEvents(new JoinListener(this, updateChecker), this);
         Bukkit.getPluginManager().registerEvents(new QuitListener(this), this);
@@ -217,6 +245,10 @@ public final class PerPlayerKit extends JavaPlugin {
 
     @Override
     public void onDisable() {
+        if (storageManager != null && storageManager.isConnected()) {
+            KitSaveQueue.get().shutdown();
+        }
+        InvalidationBus.get().shutdown();
         closeDatabaseConnection();
     }
 
@@ -238,13 +270,6 @@ public final class PerPlayerKit extends JavaPlugin {
         }
     }
 
-    private void loadDatabaseData() {
-        KitRoomDataManager.get().loadFromDB();
-        KitManager.get().getPublicKitList().forEach(kit -> KitManager.get().loadPublicKitFromDB(kit.id));
-        Bukkit.getOnlinePlayers().forEach(player -> KitManager.get().loadPlayerDataFromDB(player.getUniqueId()));
-
-    }
-
 
     private void attemptDatabaseConnection(boolean disableOnFail) {
         try {
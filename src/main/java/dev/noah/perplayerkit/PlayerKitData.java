@@ -0,0 +1,156 @@
+/*
+ * Copyright 2022-2025 Noah Ross
+ *
+ * This file is part of PerPlayerKit.
+ *
+ * PerPlayerKit is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * PerPlayerKit is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with PerPlayerKit. If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.noah.perplayerkit;
+
+import org.bukkit.inventory.ItemStack;
+
+import java.util.function.IntPredicate;
+
+/**
+ * The kits and ender chests of one player, indexed by slot 1-9.
+ * <p>
+ * Instances are never modified, changes return a new copy that is swapped into KitManager in one step.
+ * This lets any thread read a player's kits without locking. Kits loaded from storage may still be in their
+ * stored form, see {@link LazyKit}.
+ */
+public final class PlayerKitData {
+
+    public static final int SLOTS = 9;
+    public static final PlayerKitData EMPTY = new PlayerKitData(new LazyKit[SLOTS], new LazyKit[SLOTS]);
+
+    private final LazyKit[] kits;
+    private final LazyKit[] enderchests;
+
+    private PlayerKitData(LazyKit[] kits, LazyKit[] enderchests) {
+        this.kits = kits;
+        this.enderchests = enderchests;
+    }
+
+    public static boolean isValidSlot(int slot) {
+        return slot >= 1 && slot <= SLOTS;
+    }
+
+    public ItemStack[] getKit(int slot) {
+        return isValidSlot(slot) && kits[slot - 1] != null ? kits[slot - 1].get() : null;
+    }
+
+    public ItemStack[] getEnderchest(int slot) {
+        return isValidSlot(slot) && enderchests[slot - 1] != null ? enderchests[slot - 1].get() : null;
+    }
+
+    //checks for a kit without decoding it
+    public boolean hasKit(int slot) {
+        return isValidSlot(slot) && kits[slot - 1] != null && !kits[slot - 1].isUnreadable();
+    }
+
+    public boolean hasEnderchest(int slot) {
+        return isValidSlot(slot) && enderchests[slot - 1] != null && !enderchests[slot - 1].isUnreadable();
+    }
+
+    public PlayerKitData withKit(int slot, ItemStack[] kit) {
+        return withKit(slot, LazyKit.of(kit));
+    }
+
+    public PlayerKitData withEnderchest(int slot, ItemStack[] enderchest) {
+        return withEnderchest(slot, LazyKit.of(enderchest));
+    }
+
+    //keeps the stored bytes, they are decoded the first time the kit is used
+    public PlayerKitData withStoredKit(int slot, byte[] data) {
+        return withKit(slot, LazyKit.ofStored(data));
+    }
+
+    public PlayerKitData withStoredEnderchest(int slot, byte[] data) {
+        return withEnderchest(slot, LazyKit.ofStored(data));
+    }
+
+    private PlayerKitData withKit(int slot, LazyKit kit) {
+        LazyKit[] copy = kits.clone();
+        copy[slot - 1] = kit;
+        return new PlayerKitData(copy, enderchests);
+    }
+
+    private PlayerKitData withEnderchest(int slot, LazyKit enderchest) {
+        LazyKit[] copy = enderchests.clone();
+        copy[slot - 1] = enderchest;
+        return new PlayerKitData(kits, copy);
+    }
+
+    /**
+     * Takes every slot from data read from storage, except the slots keep matches, which hold changes that are not
+     * written yet. A slot that storage has no kit for is cleared unless it is kept.
+     * Used when kits loaded from storage arrive while the player's kits are already in memory.
+     *
+     * @param stored         the data read from storage
+     * @param keepKit        whether to keep this data's kit in a slot, by slot 1-9
+     * @param keepEnderchest whether to keep this data's ender chest in a slot, by slot 1-9
+     * @return the merged data
+     */
+    public PlayerKitData withStoredFrom(PlayerKitData stored, IntPredicate keepKit, IntPredicate keepEnderchest) {
+        LazyKit[] mergedKits = stored.kits.clone();
+        LazyKit[] mergedEnderchests = stored.enderchests.clone();
+        for (int i = 0; i < SLOTS; i++) {
+            if (keepKit.test(i + 1)) {
+                mergedKits[i] = kits[i];
+            }
+            if (keepEnderchest.test(i + 1)) {
+                mergedEnderchests[i] = enderchests[i];
+            }
+        }
+        return new PlayerKitData(mergedKits, mergedEnderchests);
+    }
+
+    //decodes every kit that is still in its stored form
+    void decodeAll() {
+        for (int i = 0; i < SLOTS; i++) {
+            if (kits[i] != null) {
+                kits[i].get();
+            }
+            if (enderchests[i] != null) {
+                enderchests[i].get();
+            }
+        }
+    }
+
+    /**
+     * Releases decoded kits that were loaded from storage and have not been used since the given time.
+     *
+     * @return the number of kits released
+     */
+    int releaseIdleKits(long unusedSince) {
+        int released = 0;
+        for (int i = 0; i < SLOTS; i++) {
+            if (kits[i] != null && kits[i].releaseIfIdle(unusedSince)) {
+                released++;
+            }
+            if (enderchests[i] != null && enderchests[i].releaseIfIdle(unusedSince)) {
+                released++;
+            }
+        }
+        return released;
+    }
+
+    LazyKit[] getKitSlots() {
+        return kits;
+    }
+
+    LazyKit[] getEnderchestSlots() {
+        return enderchests;
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2022-2025 Noah Ross
+ *
+ * This file is part of PerPlayerKit.
+ *
+ * PerPlayerKit is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * PerPlayerKit is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with PerPlayerKit. If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.noah.perplayerkit;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads the kit room, the public kits and the kits of players that are already online (after a reload) in the
+ * background when the plugin starts. The kit room is loaded first because the item filter needs it. Online players'
+ * kits are then fetched {@code storage.startup-batch-size} players at a time and decoded on a pool of
+ * {@code storage.startup-threads} threads while the next batch is fetched. They are decoded there even with
+ * {@code storage.lazy-decode} on, since players who are already online are about to use them. Plugin commands are refused until
+ * {@link #isReady()}, and actions waiting on a player's kits through {@link KitManager#whenLoaded} run once that
+ * player's batch is in.
+ */
+public class StartupLoader {
+
+    private static StartupLoader instance;
+    private final Plugin plugin;
+    private final int batchSize;
+    private final int threads;
+    private final CompletableFuture<Void> ready = new CompletableFuture<>();
+
+    public StartupLoader(Plugin plugin) {
+        this.plugin = plugin;
+        this.batchSize = Math.max(1, plugin.getConfig().getInt("storage.startup-batch-size", 50));
+        int configured = plugin.getConfig().getInt("storage.startup-threads", 0);
+        this.threads = configured > 0 ? configured : Runtime.getRuntime().availableProcessors();
+        instance = this;
+    }
+
+    public static StartupLoader get() {
+        if (instance == null) {
+            throw new IllegalStateException("StartupLoader has not been initialized yet!");
+        }
+        return instance;
+    }
+
+    public boolean isReady() {
+        return ready.isDone();
+    }
+
+    /**
+     * Blocks until the startup load is done. Kits decoded before the kit room is loaded would have their items
+     * removed by the item filter, so loads that cannot be refused wait for it.
+     */
+    public void awaitReady() {
+        ready.join();
+    }
+
+    /**
+     * Starts loading, must be called on the main thread once storage is connected.
+     *
+     * @return completes when everything is loaded, also if loading failed.
+     */
+    public CompletableFuture<Void> start() {
+        List<UUID> online = new ArrayList<>();
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            online.add(player.getUniqueId());
+        }
+        // marked before anything is read, so a player's queued kit actions wait for their own kits
+        Map<UUID, CompletableFuture<Void>> loads = new LinkedHashMap<>();
+        for (UUID uuid : online) {
+            CompletableFuture<Void> load = KitManager.get().startLoadIfAbsent(uuid);
+            if (load != null) {
+                loads.put(uuid, load);
+            }
+        }
+
+        PerPlayerKit.getScheduler().runTaskAsynchronously(() -> load(loads));
+        return ready;
+    }
+
+    private void load(Map<UUID, CompletableFuture<Void>> loads) {
+        long start = System.nanoTime();
+        ForkJoinPool decoder = new ForkJoinPool(threads);
+        try {
+            long phase = System.nanoTime();
+            KitRoomDataManager.get().loadFromDB();
+            plugin.getLogger().info("Loaded the kit room in " + millisSince(phase) + " ms");
+
+            phase = System.nanoTime();
+            List<String> publicKits = KitManager.get().getPublicKitList().stream().map(kit -> kit.id).toList();
+            KitManager.get().loadPublicKitsFromDB(publicKits, decoder);
+            plugin.getLogger().info("Loaded " + publicKits.size() + " public kits in " + millisSince(phase) + " ms");
+
+            phase = System.nanoTime();
+            List<UUID> players = new ArrayList<>(loads.keySet());
+            List<CompletableFuture<Void>> decoding = new ArrayList<>();
+            for (int i = 0; i < players.size() && plugin.isEnabled(); i += batchSize) {
+                List<UUID> batch = players.subList(i, Math.min(i + batchSize, players.size()));
+                Map<String, byte[]> stored = KitManager.get().fetchPlayerData(batch);
+                for (UUID uuid : batch) {
+                    decoding.add(CompletableFuture.runAsync(() -> KitManager.get().putPlayerData(uuid, stored, true), decoder)
+                            .whenComplete((result, error) -> loads.get(uuid).complete(null)));
+                }
+            }
+            CompletableFuture.allOf(decoding.toArray(CompletableFuture[]::new)).join();
+            plugin.getLogger().info("Loaded the kits of " + players.size() + " online players in " + millisSince(phase) + " ms ("
+                    + (players.size() + batchSize - 1) / batchSize + " batches, " + threads + " decode threads)");
+        } catch (Exception e) {
+            plugin.getLogger().warning("Loading kits on startup failed: " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            // players the load did not get to are loaded one by one instead
+            loads.forEach((uuid, load) -> {
+                if (load.complete(null) && plugin.isEnabled()) {
+                    KitManager.get().loadPlayerDataAsync(uuid);
+                }
+            });
+            decoder.shutdown();
+            ready.complete(null);
+            plugin.getLogger().info("Database data loaded in " + millisSince(start) + " ms");
+        }
+    }
+
+    private static long millisSince(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+}
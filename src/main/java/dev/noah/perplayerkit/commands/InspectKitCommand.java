@@ -52,7 +52,7 @@ public class InspectKitCommand implements CommandExecutor {
 
                             @Override
                             public void run() {
-                                KitManager.get().loadPlayerDataFromDB(target);
+                                KitManager.get().loadOfflinePlayerData(target);
                             }
 
                         }.runTaskAsynchronously(plugin);
@@ -18,6 +18,7 @@
  */
 package dev.noah.perplayerkit.commands;
 
+import dev.noah.perplayerkit.KitManager;
 import dev.noah.perplayerkit.util.DisabledCommand;
 import dev.noah.perplayerkit.gui.GUI;
 import org.bukkit.command.Command;
@@ -42,8 +43,10 @@ public class MainMenuCommand implements CommandExecutor {
             return true;
         }
 
-        GUI main = new GUI(plugin);
-        main.OpenMainMenu(p);
+        KitManager.get().whenLoaded(p, () -> {
+            GUI main = new GUI(plugin);
+            main.OpenMainMenu(p);
+        });
         return true;
     }
 }
@@ -18,6 +18,17 @@
  */
 package dev.noah.perplayerkit.commands;
 
+import dev.noah.perplayerkit.KitManager;
+import dev.noah.perplayerkit.KitReencoder;
+import dev.noah.perplayerkit.KitSaveQueue;
+import dev.noah.perplayerkit.PerPlayerKit;
+import dev.noah.perplayerkit.storage.KitKey;
+import dev.noah.perplayerkit.storage.exceptions.StorageReadException;
+import dev.noah.perplayerkit.util.CompressionManager;
+import dev.noah.perplayerkit.util.ItemInterner;
+import dev.noah.perplayerkit.util.KitApplier;
+import dev.noah.perplayerkit.util.KitTemplates;
+import dev.noah.perplayerkit.util.Serializer;
 import dev.noah.perplayerkit.util.importutil.KitsXImporter;
 import org.bukkit.ChatColor;
 import org.bukkit.command.Command;
@@ -28,6 +39,7 @@ import org.bukkit.plugin.Plugin;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.IOException;
 import java.util.List;
 
 public class PerPlayerKitCommand implements CommandExecutor, TabCompleter {
@@ -72,6 +84,38 @@ public class PerPlayerKitCommand implements CommandExecutor, TabCompleter {
                         break;
                 }
                 return true;
+            case "compression":
+                sender.sendMessage(ChatColor.GREEN + "Scanning stored kits...");
+                PerPlayerKit.getScheduler().runTaskAsynchronously(() -> reportCompression(sender));
+                return true;
+            case "pool":
+                List<String> stats = PerPlayerKit.storageManager.getPoolStats();
+                if (stats.isEmpty()) {
+                    sender.sendMessage(ChatColor.RED + "This storage type does not use a connection pool.");
+                }
+                stats.forEach(line -> sender.sendMessage(ChatColor.GREEN + line));
+                return true;
+            case "queue":
+                KitSaveQueue.get().getStats().forEach(line -> sender.sendMessage(ChatColor.GREEN + line));
+                return true;
+            case "cache":
+                KitManager.get().getOfflineCacheStats().forEach(line -> sender.sendMessage(ChatColor.GREEN + line));
+                return true;
+            case "intern":
+                ItemInterner.get().getStats(10).forEach(line -> sender.sendMessage(ChatColor.GREEN + line));
+                return true;
+            case "apply":
+                KitApplier.get().getStats().forEach(line -> sender.sendMessage(ChatColor.GREEN + line));
+                return true;
+            case "reencode":
+                if (KitReencoder.get().start(true)) {
+                    sender.sendMessage(ChatColor.GREEN + "Started re-encoding kits with the Paper item codec.");
+                }
+                KitReencoder.get().getStats().forEach(line -> sender.sendMessage(ChatColor.GREEN + line));
+                return true;
+            case "templates":
+                KitTemplates.get().getStats().forEach(line -> sender.sendMessage(ChatColor.GREEN + line));
+                return true;
             default:
                 sender.sendMessage(ChatColor.RED + "Invalid subcommand!");
                 return true;
@@ -79,13 +123,43 @@ public class PerPlayerKitCommand implements CommandExecutor, TabCompleter {
         }
     }
 
+    private void reportCompression(CommandSender sender) {
+        long[] kits = new long[3]; // compressed, uncompressed, unreadable
+        long[] bytes = new long[2]; // stored, uncompressed
+
+        try {
+            PerPlayerKit.storageManager.forEachKit((kitID, data) -> {
+                if (KitKey.parse(kitID) == null) {
+                    return;
+                }
+                try {
+                    byte[] raw = Serializer.toRawBytes(data);
+                    kits[CompressionManager.isCompressed(Serializer.fromStoredBytes(data)) ? 0 : 1]++;
+                    bytes[0] += data.length;
+                    bytes[1] += raw.length;
+                } catch (IOException | IllegalArgumentException e) {
+                    kits[2]++;
+                }
+            });
+        } catch (StorageReadException e) {
+            sender.sendMessage(ChatColor.RED + "Could not read the stored kits: " + e.getMessage());
+            return;
+        }
+
+        double ratio = bytes[0] == 0 ? 1 : (double) bytes[1] / bytes[0];
+        sender.sendMessage(ChatColor.GREEN + "Compression is " + (CompressionManager.get().isEnabled() ? "enabled" : "disabled"));
+        sender.sendMessage(ChatColor.GREEN + "Kits: " + (kits[0] + kits[1]) + " (" + kits[0] + " compressed, " + kits[1] + " uncompressed"
+                + (kits[2] > 0 ? ", " + kits[2] + " unreadable" : "") + ")");
+        sender.sendMessage(ChatColor.GREEN + "Stored: " + bytes[0] / 1024 + " KiB, uncompressed: " + bytes[1] / 1024 + " KiB, ratio: "
+                + String.format("%.2f", ratio) + "x");
+    }
 
     @Nullable
     @Override
     public List<String> onTabComplete(@NotNull CommandSender sender, @NotNull Command command, @NotNull String label, @NotNull String[] args) {
 
         if(args.length == 1) {
-            return List.of("about", "import");
+            return List.of("about", "import", "compression", "pool", "queue", "cache", "intern", "apply", "reencode", "templates");
         }
 
         if(args.length == 2 && args[0].equalsIgnoreCase("import")) {
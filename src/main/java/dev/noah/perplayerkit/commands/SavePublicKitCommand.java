@@ -19,7 +19,6 @@
 package dev.noah.perplayerkit.commands;
 
 import dev.noah.perplayerkit.util.DisabledCommand;
-import dev.noah.perplayerkit.ItemFilter;
 import dev.noah.perplayerkit.KitManager;
 import org.bukkit.ChatColor;
 import org.bukkit.command.Command;
@@ -75,8 +74,6 @@ public class SavePublicKitCommand implements CommandExecutor, TabCompleter {
         }
 
 
-        data = ItemFilter.get().filterItemStack(data);
-
         KitManager kitManager = KitManager.get();
         //save kit
         boolean success = kitManager.savePublicKit(kidId, data);
@@ -19,6 +19,7 @@
 package dev.noah.perplayerkit.commands;
 
 import com.google.common.primitives.Ints;
+import dev.noah.perplayerkit.KitManager;
 import dev.noah.perplayerkit.KitShareManager;
 import dev.noah.perplayerkit.util.CooldownManager;
 import org.bukkit.ChatColor;
@@ -61,7 +62,7 @@ public class ShareECKitCommand implements CommandExecutor {
             return true;
         }
 
-        KitShareManager.get().shareEC(player, slot);
+        KitManager.get().whenLoaded(player, () -> KitShareManager.get().shareEC(player, slot));
         shareECCommandCooldown.setCooldown(player);
 
         return true;
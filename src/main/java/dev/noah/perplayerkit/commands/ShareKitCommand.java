@@ -19,6 +19,7 @@
 package dev.noah.perplayerkit.commands;
 
 import com.google.common.primitives.Ints;
+import dev.noah.perplayerkit.KitManager;
 import dev.noah.perplayerkit.KitShareManager;
 import dev.noah.perplayerkit.util.CooldownManager;
 import org.bukkit.ChatColor;
@@ -61,7 +62,7 @@ public class ShareKitCommand implements CommandExecutor {
             return true;
         }
 
-        KitShareManager.get().shareKit(player, slot);
+        KitManager.get().whenLoaded(player, () -> KitShareManager.get().shareKit(player, slot));
         shareKitCommandCooldown.setCooldown(player);
 
         return true;
@@ -46,7 +46,7 @@ public class ShortECCommand implements CommandExecutor {
 
         if (label.matches("ec[1-9]")) {
             int ecNumber = Integer.parseInt(label.substring(2)); // Extract the number from the label
-            KitManager.get().loadEnderchest(player, ecNumber);
+            KitManager.get().whenLoaded(player, () -> KitManager.get().loadEnderchest(player, ecNumber));
         } else {
             player.sendMessage("Invalid command label.");
         }
@@ -47,10 +47,10 @@ public class ShortKitCommand implements CommandExecutor {
         // Check if the label matches "kX" or "kitX" where X is a number between 1 and 9
         if (label.matches("k[1-9]")) {
             int kitNumber = Integer.parseInt(label.substring(1)); // Extract the number for "kX"
-            KitManager.get().loadKit(player, kitNumber);
+            KitManager.get().whenLoaded(player, () -> KitManager.get().loadKit(player, kitNumber));
         } else if (label.matches("kit[1-9]")) {
             int kitNumber = Integer.parseInt(label.substring(3)); // Extract the number for "kitX"
-            KitManager.get().loadKit(player, kitNumber);
+            KitManager.get().whenLoaded(player, () -> KitManager.get().loadKit(player, kitNumber));
         } else {
             player.sendMessage("Invalid command label.");
         }
@@ -55,21 +55,23 @@ public class SwapKitCommand implements CommandExecutor {
         KitManager kitManager = KitManager.get();
         UUID uuid = player.getUniqueId();
 
-        if (!kitManager.hasKit(uuid, slot1)) {
+        ItemStack[] kit1 = kitManager.getPlayerKit(uuid, slot1);
+        if (kit1 == null) {
             player.sendMessage(ChatColor.RED + "Kit " + slot1 + " doesn't exist!");
             return true;
         }
 
-        if (!kitManager.hasKit(uuid, slot2)) {
+        ItemStack[] kit2 = kitManager.getPlayerKit(uuid, slot2);
+        if (kit2 == null) {
             player.sendMessage(ChatColor.RED + "Kit " + slot2 + " doesn't exist!");
             return true;
         }
 
-        ItemStack[] tempkit = kitManager.getPlayerKit(uuid, slot1).clone();
-        kitManager.savekit(uuid, slot1, kitManager.getPlayerKit(uuid, slot2), true);
+        ItemStack[] tempkit = kit1.clone();
+        kitManager.savekit(uuid, slot1, kit2, true);
         kitManager.savekit(uuid, slot2, tempkit.clone(), true);
-        kitManager.saveEnderchestToDB(uuid, slot1);
-        kitManager.saveEnderchestToDB(uuid, slot2);
+        kitManager.savePlayerKitToDB(uuid, slot1);
+        kitManager.savePlayerKitToDB(uuid, slot2);
 
         player.sendMessage(ChatColor.GREEN + "Kits " + slot1 + " and " + slot2 + " have been swapped!");
         return true;
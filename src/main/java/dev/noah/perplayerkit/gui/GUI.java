@@ -21,7 +21,6 @@ package dev.noah.perplayerkit.gui;
 import dev.noah.perplayerkit.*;
 import dev.noah.perplayerkit.gui.config.MenuConfig;
 import dev.noah.perplayerkit.util.BroadcastManager;
-import dev.noah.perplayerkit.util.IDUtil;
 import dev.noah.perplayerkit.util.ItemParser;
 import dev.noah.perplayerkit.util.PlayerUtil;
 import net.md_5.bungee.api.ChatColor;
@@ -74,8 +73,8 @@ public class GUI {
         if (config == null) throw new IllegalStateException("Configuration section 'kit_editor_menu' not found in kit_editor_menu.yml");
 
         // Kit Items
-        if (KitManager.get().getItemStackArrayById(p.getUniqueId().toString() + slot) != null) {
-            ItemStack[] kit = KitManager.get().getItemStackArrayById(p.getUniqueId().toString() + slot);
+        ItemStack[] kit = KitManager.get().getPlayerKit(p.getUniqueId(), slot);
+        if (kit != null) {
             for (int i = 0; i < 41; i++) {
                 menu.getSlot(i).setItem(kit[i]);
             }
@@ -115,9 +114,8 @@ public class GUI {
     public void OpenPublicKitEditor(Player p, String kitId) {
         Menu menu = createPublicKitMenu(kitId);
 
-        if (KitManager.get().getItemStackArrayById(IDUtil.getPublicKitId(kitId)) != null) {
-
-            ItemStack[] kit = KitManager.get().getItemStackArrayById(IDUtil.getPublicKitId(kitId));
+        ItemStack[] kit = KitManager.get().getPublicKit(kitId);
+        if (kit != null) {
             for (int i = 0; i < 41; i++) {
                 menu.getSlot(i).setItem(kit[i]);
             }
@@ -154,9 +152,8 @@ public class GUI {
             menu.getSlot(i).setItem(ItemUtil.createItem(Material.BLUE_STAINED_GLASS_PANE, 1, " "));
 
         }
-        if (KitManager.get().getItemStackArrayById(p.getUniqueId() + "ec" + slot) != null) {
-
-            ItemStack[] kit = KitManager.get().getItemStackArrayById(p.getUniqueId() + "ec" + slot);
+        ItemStack[] kit = KitManager.get().getPlayerEC(p.getUniqueId(), slot);
+        if (kit != null) {
             for (int i = 9; i < 36; i++) {
                 menu.getSlot(i).setItem(kit[i - 9]);
             }
@@ -177,9 +174,8 @@ public class GUI {
     public void InspectKit(Player p, UUID target, int slot) {
         Menu menu = createInspectMenu(slot, target.toString());
 
-        if (KitManager.get().getItemStackArrayById(target.toString() + slot) != null) {
-
-            ItemStack[] kit = KitManager.get().getItemStackArrayById(target.toString() + slot);
+        ItemStack[] kit = KitManager.get().getPlayerKit(target, slot);
+        if (kit != null) {
             for (int i = 0; i < 41; i++) {
                 menu.getSlot(i).setItem(kit[i]);
             }
@@ -243,7 +239,7 @@ public class GUI {
             ItemStack kitNotFoundItem = ItemParser.parse(customKitSection.getConfigurationSection("not_found"), null);
             for (int i = 0; i < customKitSlots.size(); i++) {
                 int slot = customKitSlots.get(i);
-                if (KitManager.get().getItemStackArrayById(p.getUniqueId().toString() + (i + 1)) != null) {
+                if (KitManager.get().hasKit(p.getUniqueId(), i + 1)) {
                     menu.getSlot(slot).setItem(kitExistsItem);
                 } else {
                     menu.getSlot(slot).setItem(kitNotFoundItem);
@@ -46,7 +46,8 @@ public class AutoRekitListener implements Listener {
             return;
         }
 
-        KitManager.get().loadLastKit(e.getPlayer());
+        Player player = e.getPlayer();
+        KitManager.get().whenLoaded(player, () -> KitManager.get().loadLastKit(player));
 
     }
 
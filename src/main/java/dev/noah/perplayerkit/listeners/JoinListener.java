@@ -18,9 +18,9 @@
  */
 package dev.noah.perplayerkit.listeners;
 
-import com.github.Anon8281.universalScheduler.UniversalRunnable;
 import dev.noah.perplayerkit.KitManager;
 import dev.noah.perplayerkit.PerPlayerKit;
+import dev.noah.perplayerkit.StartupLoader;
 import dev.noah.perplayerkit.UpdateChecker;
 import dev.noah.perplayerkit.util.BroadcastManager;
 import net.kyori.adventure.text.Component;
@@ -28,8 +28,11 @@ import net.kyori.adventure.text.minimessage.MiniMessage;
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerLoginEvent;
 import org.bukkit.plugin.Plugin;
 import org.bukkit.scheduler.BukkitRunnable;
 
@@ -48,6 +51,22 @@ public class JoinListener implements Listener {
         this.updateChecker = updateChecker;
     }
 
+    //blocking IO is fine here, the player is not in the world yet
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPreLogin(AsyncPlayerPreLoginEvent e) {
+        if (e.getLoginResult() == AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            StartupLoader.get().awaitReady();
+            KitManager.get().preloadPlayerData(e.getUniqueId());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onLogin(PlayerLoginEvent e) {
+        if (e.getResult() != PlayerLoginEvent.Result.ALLOWED) {
+            KitManager.get().unloadPlayerData(e.getPlayer().getUniqueId());
+        }
+    }
+
     @EventHandler
     public void onJoin(PlayerJoinEvent e) {
         Player player = e.getPlayer();
@@ -58,14 +77,8 @@ public class JoinListener implements Listener {
 
         UUID uuid = player.getUniqueId();
 
-        //  KitManager.loadFromSQL(uuid);
-
-        new UniversalRunnable() {
-            @Override
-            public void run() {
-                KitManager.get().loadPlayerDataFromDB(uuid);
-            }
-        }.runTaskAsynchronously(plugin);
+        // normally done in onPreLogin already, this covers players that joined before a reload
+        KitManager.get().loadPlayerDataAsync(uuid);
 
         // Check if MOTD is enabled and send MOTD messages
         if (plugin.getConfig().getBoolean("motd.enabled")) {
@@ -18,7 +18,6 @@
  */
 package dev.noah.perplayerkit.listeners;
 
-import com.github.Anon8281.universalScheduler.UniversalRunnable;
 import dev.noah.perplayerkit.KitManager;
 import dev.noah.perplayerkit.PerPlayerKit;
 import org.bukkit.Bukkit;
@@ -44,15 +43,9 @@ public class QuitListener implements Listener {
         Player player = e.getPlayer();
         UUID uuid = player.getUniqueId();
 
-        new UniversalRunnable() {
-            @Override
-            public void run() {
-                KitManager.get().savePlayerKitsToDB(uuid);
-            }
-        }.runTaskAsynchronously(plugin);
-
-        PerPlayerKit.getScheduler().runTaskAsynchronously(() -> {
+        // a tick later the player is no longer online, so their kits are unloaded after the save
+        PerPlayerKit.getScheduler().runTaskLaterAsynchronously(() -> {
             KitManager.get().savePlayerKitsToDB(uuid);
-        });
+        }, 1);
     }
 }
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2022-2025 Noah Ross
+ *
+ * This file is part of PerPlayerKit.
+ *
+ * PerPlayerKit is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * PerPlayerKit is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with PerPlayerKit. If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.noah.perplayerkit.listeners;
+
+import dev.noah.perplayerkit.StartupLoader;
+import org.bukkit.ChatColor;
+import org.bukkit.command.PluginCommand;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerCommandPreprocessEvent;
+import org.bukkit.plugin.java.JavaPlugin;
+
+//refuses kit commands while kits are still being loaded on startup, /perplayerkit stays usable for admins
+public class StartupCommandListener implements Listener {
+
+    private final JavaPlugin plugin;
+
+    public StartupCommandListener(JavaPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    @EventHandler(priority = EventPriority.LOWEST, ignoreCancelled = true)
+    public void onCommand(PlayerCommandPreprocessEvent e) {
+        if (StartupLoader.get().isReady()) {
+            return;
+        }
+
+        String label = e.getMessage().substring(1).split(" ", 2)[0].toLowerCase();
+        int namespace = label.indexOf(':');
+        if (namespace != -1) {
+            label = label.substring(namespace + 1);
+        }
+        PluginCommand command = plugin.getCommand(label);
+        if (command != null && !command.getName().equals("perplayerkit")) {
+            e.setCancelled(true);
+            e.getPlayer().sendMessage(ChatColor.RED + "Kits are still loading, please try again in a moment.");
+        }
+    }
+}
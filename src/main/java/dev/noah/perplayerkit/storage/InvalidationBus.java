@@ -0,0 +1,183 @@
+/*
+ * Copyright 2022-2025 Noah Ross
+ *
+ * This file is part of PerPlayerKit.
+ *
+ * PerPlayerKit is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * PerPlayerKit is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with PerPlayerKit. If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.noah.perplayerkit.storage;
+
+import dev.noah.perplayerkit.KitManager;
+import dev.noah.perplayerkit.KitRoomDataManager;
+import dev.noah.perplayerkit.KitSaveQueue;
+import dev.noah.perplayerkit.PerPlayerKit;
+import dev.noah.perplayerkit.util.IDUtil;
+import org.bukkit.plugin.Plugin;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPubSub;
+
+import java.util.*;
+
+/**
+ * Tells other servers sharing the same database that kits changed, over Redis pub/sub. Servers that have one of the
+ * changed kits loaded reload it from the database, so a stale copy is never written back over a newer one.
+ * <p>
+ * A message is the sending server's id, the operation, then the kit ids, one per line.
+ */
+public class InvalidationBus {
+
+    private static final String SAVE = "save";
+    private static final String DELETE = "delete";
+    private static final long RECONNECT_DELAY_MS = 5000;
+
+    private static InvalidationBus instance;
+    private final Plugin plugin;
+    private final boolean enabled;
+    private final String channel;
+    private final String serverId;
+    private JedisPool pool;
+    private Thread subscriberThread;
+    private volatile boolean running;
+    private final JedisPubSub subscriber = new JedisPubSub() {
+        @Override
+        public void onMessage(String channel, String message) {
+            handle(message);
+        }
+    };
+
+    public InvalidationBus(Plugin plugin) {
+        this.plugin = plugin;
+        this.enabled = plugin.getConfig().getBoolean("sync.enabled", false);
+        this.channel = plugin.getConfig().getString("sync.channel", "perplayerkit:invalidate");
+        this.serverId = UUID.randomUUID().toString();
+        instance = this;
+    }
+
+    public static InvalidationBus get() {
+        if (instance == null) {
+            throw new IllegalStateException("InvalidationBus has not been initialized yet!");
+        }
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        pool = RedisStorage.createPool(plugin);
+        running = true;
+        subscriberThread = new Thread(this::listen, "PerPlayerKit Invalidation");
+        subscriberThread.setDaemon(true);
+        subscriberThread.start();
+        plugin.getLogger().info("Kit invalidation enabled on channel " + channel);
+    }
+
+    public void shutdown() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            subscriber.unsubscribe();
+        } catch (Exception ignored) {
+            // was not subscribed
+        }
+        pool.close();
+    }
+
+    public void publishSaved(Collection<String> kitIDs) {
+        publish(SAVE, kitIDs);
+    }
+
+    public void publishDeleted(Collection<String> kitIDs) {
+        publish(DELETE, kitIDs);
+    }
+
+    private void publish(String operation, Collection<String> kitIDs) {
+        if (!running || kitIDs.isEmpty()) {
+            return;
+        }
+        StringBuilder message = new StringBuilder(serverId).append('\n').append(operation);
+        kitIDs.forEach(kitID -> message.append('\n').append(kitID));
+        try (Jedis jedis = pool.getResource()) {
+            jedis.publish(channel, message.toString());
+        } catch (Exception e) {
+            plugin.getLogger().warning("Failed to publish kit invalidation: " + e.getMessage());
+        }
+    }
+
+    private void listen() {
+        while (running) {
+            try (Jedis jedis = pool.getResource()) {
+                jedis.subscribe(subscriber, channel);
+            } catch (Exception e) {
+                if (!running) {
+                    return;
+                }
+                plugin.getLogger().warning("Kit invalidation subscriber disconnected, retrying: " + e.getMessage());
+                try {
+                    Thread.sleep(RECONNECT_DELAY_MS);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void handle(String message) {
+        String[] lines = message.split("\n");
+        if (lines.length < 3 || lines[0].equals(serverId)) {
+            return;
+        }
+
+        List<String> publicKits = new ArrayList<>();
+        List<String> kits = new ArrayList<>();
+        boolean kitRoom = false;
+        for (int i = 2; i < lines.length; i++) {
+            KitKey key = KitKey.parse(lines[i]);
+            if (key == null) {
+                continue;
+            }
+            switch (key.type) {
+                case PUBLIC -> publicKits.add(key.name);
+                case KITROOM -> kitRoom = true;
+                default -> kits.add(lines[i]);
+            }
+        }
+
+        boolean deleted = lines[1].equals(DELETE);
+        boolean reloadKitRoom = kitRoom;
+        PerPlayerKit.getScheduler().runTaskAsynchronously(() -> {
+            if (deleted) {
+                // like reloads, kits with a local edit waiting to be written are kept, the edit is written after the delete
+                KitSaveQueue queue = KitSaveQueue.get();
+                kits.stream().filter(id -> !queue.isPending(id)).forEach(KitManager.get()::unloadKit);
+                publicKits.stream().map(IDUtil::getPublicKitId).filter(id -> !queue.isPending(id)).forEach(KitManager.get()::unloadKit);
+            } else {
+                KitManager.get().reloadKitsFromDB(kits);
+                if (!publicKits.isEmpty()) {
+                    KitManager.get().loadPublicKitsFromDB(publicKits);
+                }
+            }
+            if (reloadKitRoom) {
+                KitRoomDataManager.get().loadFromDB();
+            }
+        });
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2022-2025 Noah Ross
+ *
+ * This file is part of PerPlayerKit.
+ *
+ * PerPlayerKit is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * PerPlayerKit is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with PerPlayerKit. If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.noah.perplayerkit.storage;
+
+import dev.noah.perplayerkit.util.IDUtil;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * Parsed form of the string ids built by {@link dev.noah.perplayerkit.util.IDUtil}.
+ * Storage backends that do not store the raw string use this to map an id onto their own layout.
+ */
+public class KitKey {
+
+    public enum Type {
+        KIT, ENDERCHEST, PUBLIC, KITROOM
+    }
+
+    private static final int UUID_LENGTH = 36;
+
+    public final Type type;
+    public final UUID player;
+    public final int slot;
+    public final String name;
+
+    private KitKey(Type type, UUID player, int slot, String name) {
+        this.type = type;
+        this.player = player;
+        this.slot = slot;
+        this.name = name;
+    }
+
+    /**
+     * Parses an id created by IDUtil.
+     *
+     * @param kitID the id
+     * @return the parsed key, or null if the id is not in a known format
+     */
+    public static KitKey parse(String kitID) {
+        if (kitID.startsWith("public")) {
+            return new KitKey(Type.PUBLIC, null, -1, kitID.substring("public".length()));
+        }
+        if (kitID.startsWith("kitroom")) {
+            Integer page = parseSlot(kitID.substring("kitroom".length()));
+            if (page == null || !IDUtil.getKitRoomId(page).equals(kitID)) {
+                return null;
+            }
+            return new KitKey(Type.KITROOM, null, page, null);
+        }
+        if (kitID.length() <= UUID_LENGTH || kitID.charAt(8) != '-' || kitID.charAt(13) != '-') {
+            return null;
+        }
+
+        UUID player;
+        try {
+            player = UUID.fromString(kitID.substring(0, UUID_LENGTH));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+
+        String rest = kitID.substring(UUID_LENGTH);
+        Type type = Type.KIT;
+        if (rest.startsWith("ec")) {
+            type = Type.ENDERCHEST;
+            rest = rest.substring(2);
+        }
+        Integer slot = parseSlot(rest);
+        if (slot == null) {
+            return null;
+        }
+        KitKey key = new KitKey(type, player, slot, null);
+        // only accept ids that IDUtil would have produced, so toID() always round trips
+        return key.toID().equals(kitID) ? key : null;
+    }
+
+    /**
+     * @return the IDUtil string id for this key
+     */
+    public String toID() {
+        return switch (type) {
+            case KIT -> IDUtil.getPlayerKitId(player, slot);
+            case ENDERCHEST -> IDUtil.getECId(player, slot);
+            case PUBLIC -> IDUtil.getPublicKitId(name);
+            case KITROOM -> IDUtil.getKitRoomId(slot);
+        };
+    }
+
+    private static Integer parseSlot(String value) {
+        if (value.isEmpty() || value.length() > 3) {
+            return null;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (!Character.isDigit(value.charAt(i))) {
+                return null;
+            }
+        }
+        return Integer.parseInt(value);
+    }
+
+    public static byte[] uuidToBytes(UUID uuid) {
+        return ByteBuffer.allocate(16).putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits()).array();
+    }
+
+    public static UUID uuidFromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+}
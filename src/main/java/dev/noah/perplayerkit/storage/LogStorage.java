@@ -0,0 +1,563 @@
+/*
+ * Copyright 2022-2025 Noah Ross
+ *
+ * This file is part of PerPlayerKit.
+ *
+ * PerPlayerKit is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * PerPlayerKit is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with PerPlayerKit. If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.noah.perplayerkit.storage;
+
+import com.github.Anon8281.universalScheduler.scheduling.tasks.MyScheduledTask;
+import dev.noah.perplayerkit.PerPlayerKit;
+import dev.noah.perplayerkit.storage.exceptions.StorageConnectionException;
+import dev.noah.perplayerkit.storage.exceptions.StorageOperationException;
+import dev.noah.perplayerkit.storage.exceptions.StorageReadException;
+import dev.noah.perplayerkit.storage.exceptions.StorageWriteException;
+import dev.noah.perplayerkit.util.Serializer;
+import org.bukkit.plugin.Plugin;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * Local file storage made of append only segment files. Every save or delete appends a record to the newest
+ * segment, an in memory index points at the latest value of each kit and values are read through memory mapped
+ * segments. Segments full of overwritten data are compacted in the background.
+ * <p>
+ * A record is a type byte, the key and value lengths as ints, the UTF-8 key, the value and a CRC32 of all of that.
+ * A torn record at the end of the newest segment, left by a crash, is cut off when the storage is opened.
+ * <p>
+ * Once compaction has copied the live data out of the sealed segments it records the highest compacted segment id in
+ * a manifest file. Segments up to that id are never replayed, so one whose delete failed can not bring back kits that
+ * were deleted or overwritten since.
+ */
+public class LogStorage implements StorageManager {
+
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final int HEADER_SIZE = 9;
+    private static final int TRAILER_SIZE = 4;
+    private static final String EXTENSION = ".seg";
+    private static final String MANIFEST = "compacted";
+    private static final int COMPACTION_BATCH_SIZE = 500;
+
+    private final Plugin plugin;
+    private final File directory;
+    private final File yamlFile;
+    private final long segmentSize;
+    private final boolean fsync;
+    private final long compactionInterval;
+    private final double compactionThreshold;
+
+    private final Map<String, Location> index = new ConcurrentHashMap<>();
+    private final NavigableMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+    // reads hold the read lock so compaction cannot close a segment while it is being read
+    private final ReentrantReadWriteLock segmentLock = new ReentrantReadWriteLock();
+    private final Object appendLock = new Object();
+    private volatile Segment active;
+    // segments with this id or lower were compacted, their files only remain if deleting them failed
+    private int compactedThrough;
+    private volatile boolean open;
+    private MyScheduledTask compactionTask;
+
+    public LogStorage(Plugin plugin, File directory, File yamlFile) {
+        this.plugin = plugin;
+        this.directory = directory;
+        this.yamlFile = yamlFile;
+        // mapped buffers are int indexed
+        this.segmentSize = Math.max(1024 * 1024, Math.min(1024L * 1024 * 1024, plugin.getConfig().getLong("file.segment-size", 16L * 1024 * 1024)));
+        this.fsync = plugin.getConfig().getBoolean("file.fsync", true);
+        this.compactionInterval = Math.max(1, plugin.getConfig().getLong("file.compaction-interval", 300));
+        this.compactionThreshold = plugin.getConfig().getDouble("file.compaction-threshold", 0.5);
+    }
+
+    @Override
+    public boolean isConnected() {
+        return open;
+    }
+
+    @Override
+    public void connect() throws StorageConnectionException {
+        if (open) {
+            return;
+        }
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Could not create " + directory);
+            }
+            compactedThrough = readManifest();
+            File[] files = directory.listFiles((dir, name) -> name.endsWith(EXTENSION));
+            List<Integer> ids = new ArrayList<>();
+            for (File file : files == null ? new File[0] : files) {
+                int id = Integer.parseInt(file.getName().substring(0, file.getName().length() - EXTENSION.length()));
+                if (id > compactedThrough) {
+                    ids.add(id);
+                } else if (!file.delete()) {
+                    plugin.getLogger().warning("Could not delete compacted segment " + file.getName() + ", it is skipped");
+                }
+            }
+            Collections.sort(ids);
+
+            for (int i = 0; i < ids.size(); i++) {
+                Segment segment = new Segment(ids.get(i), segmentFile(ids.get(i)));
+                segments.put(segment.id, segment);
+                recover(segment, i == ids.size() - 1);
+            }
+            active = segments.isEmpty() ? newSegment(compactedThrough + 1) : segments.lastEntry().getValue();
+            open = true;
+        } catch (IOException | NumberFormatException e) {
+            throw new StorageConnectionException("Failed to open kit storage in " + directory, e);
+        }
+    }
+
+    @Override
+    public void init() throws StorageOperationException {
+        if (index.isEmpty() && segments.size() == 1 && active.size == 0 && yamlFile.exists()) {
+            importYaml();
+        }
+        plugin.getLogger().info("File storage opened, " + index.size() + " kits in " + segments.size() + " segments.");
+        long ticks = compactionInterval * 20;
+        compactionTask = PerPlayerKit.getScheduler().runTaskTimerAsynchronously(this::compact, ticks, ticks);
+    }
+
+    @Override
+    public void close() throws StorageConnectionException {
+        if (!open) {
+            return;
+        }
+        if (compactionTask != null) {
+            compactionTask.cancel();
+        }
+        segmentLock.writeLock().lock();
+        try {
+            synchronized (appendLock) {
+                open = false;
+                for (Segment segment : segments.values()) {
+                    segment.close();
+                }
+                segments.clear();
+                index.clear();
+            }
+        } catch (IOException e) {
+            throw new StorageConnectionException("Failed to close kit storage", e);
+        } finally {
+            segmentLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void keepAlive() {
+    }
+
+    @Override
+    public void saveKitDataByID(String kitID, String data) {
+        saveKitBytesByID(kitID, Serializer.decodeStorageText(data));
+    }
+
+    @Override
+    public String getKitDataByID(String kitID) {
+        byte[] data = getKitBytesByID(kitID);
+        return data == null ? "Error" : Serializer.toStorageText(data);
+    }
+
+    @Override
+    public boolean doesKitExistByID(String kitID) {
+        return index.containsKey(kitID);
+    }
+
+    @Override
+    public void deleteKitByID(String kitID) {
+        deleteKitsByIDs(Collections.singletonList(kitID));
+    }
+
+    @Override
+    public void saveKitBytesByID(String kitID, byte[] data) {
+        saveKitBytesByIDs(Collections.singletonMap(kitID, data));
+    }
+
+    @Override
+    public Map<String, String> getKitDataByIDs(Collection<String> kitIDs) {
+        Map<String, String> result = new HashMap<>();
+        getKitBytesByIDs(kitIDs).forEach((kitID, data) -> result.put(kitID, Serializer.toStorageText(data)));
+        return result;
+    }
+
+    @Override
+    public void saveKitDataByIDs(Map<String, String> kits) {
+        Map<String, byte[]> binary = new HashMap<>();
+        kits.forEach((kitID, data) -> binary.put(kitID, Serializer.decodeStorageText(data)));
+        saveKitBytesByIDs(binary);
+    }
+
+    @Override
+    public Map<String, byte[]> getKitBytesByIDs(Collection<String> kitIDs) {
+        Map<String, byte[]> result = new HashMap<>();
+        segmentLock.readLock().lock();
+        try {
+            for (String kitID : kitIDs) {
+                Location location = index.get(kitID);
+                if (location != null) {
+                    result.put(kitID, location.segment.read(location.offset, location.length));
+                }
+            }
+        } catch (IOException e) {
+            throw new StorageReadException("Failed to read " + kitIDs.size() + " kits", e);
+        } finally {
+            segmentLock.readLock().unlock();
+        }
+        return result;
+    }
+
+    @Override
+    public void saveKitBytesByIDs(Map<String, byte[]> kits) {
+        if (kits.isEmpty()) {
+            return;
+        }
+        try {
+            synchronized (appendLock) {
+                for (Map.Entry<String, byte[]> entry : kits.entrySet()) {
+                    append(PUT, entry.getKey(), entry.getValue());
+                }
+                sync();
+            }
+        } catch (IOException e) {
+            throw new StorageWriteException("Failed to save " + kits.size() + " kits", e);
+        }
+    }
+
+    @Override
+    public void deleteKitsByIDs(Collection<String> kitIDs) {
+        if (kitIDs.isEmpty()) {
+            return;
+        }
+        try {
+            synchronized (appendLock) {
+                for (String kitID : kitIDs) {
+                    if (index.containsKey(kitID)) {
+                        append(DELETE, kitID, new byte[0]);
+                    }
+                }
+                sync();
+            }
+        } catch (IOException e) {
+            throw new StorageWriteException("Failed to delete " + kitIDs.size() + " kits", e);
+        }
+    }
+
+    @Override
+    public void forEachKit(BiConsumer<String, byte[]> consumer) {
+        List<String> kitIDs = new ArrayList<>(index.keySet());
+        for (int i = 0; i < kitIDs.size(); i += COMPACTION_BATCH_SIZE) {
+            getKitBytesByIDs(kitIDs.subList(i, Math.min(i + COMPACTION_BATCH_SIZE, kitIDs.size()))).forEach(consumer);
+        }
+    }
+
+    private void append(byte type, String kitID, byte[] value) throws IOException {
+        if (!open) {
+            throw new IOException("Kit storage is closed");
+        }
+        if (active.size >= segmentSize) {
+            // sync() only forces the active segment, records this batch already wrote here would be left unsynced
+            if (fsync) {
+                active.channel.force(false);
+            }
+            active = newSegment(active.id + 1);
+        }
+
+        byte[] key = kitID.getBytes(StandardCharsets.UTF_8);
+        int recordSize = HEADER_SIZE + key.length + value.length + TRAILER_SIZE;
+        ByteBuffer record = ByteBuffer.allocate(recordSize);
+        record.put(type).putInt(key.length).putInt(value.length).put(key).put(value);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 0, recordSize - TRAILER_SIZE);
+        record.putInt((int) crc.getValue());
+        record.flip();
+
+        Segment segment = active;
+        long position = segment.size;
+        while (record.hasRemaining()) {
+            segment.channel.write(record, position + record.position());
+        }
+        segment.size += recordSize;
+
+        Location old;
+        if (type == PUT) {
+            old = index.put(kitID, new Location(segment, position + HEADER_SIZE + key.length, value.length, recordSize));
+        } else {
+            old = index.remove(kitID);
+            // the tombstone is only needed until the segments holding older values are compacted
+            segment.dead += recordSize;
+        }
+        if (old != null) {
+            old.segment.dead += old.recordSize;
+        }
+    }
+
+    private void sync() throws IOException {
+        if (fsync) {
+            active.channel.force(false);
+        }
+    }
+
+    private void recover(Segment segment, boolean newest) throws IOException {
+        long size = segment.channel.size();
+        MappedByteBuffer buffer = segment.channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        long position = 0;
+        CRC32 crc = new CRC32();
+
+        while (position < size) {
+            if (size - position < HEADER_SIZE + TRAILER_SIZE) {
+                break;
+            }
+            buffer.position((int) position);
+            byte type = buffer.get();
+            int keyLength = buffer.getInt();
+            int valueLength = buffer.getInt();
+            if ((type != PUT && type != DELETE) || keyLength < 0 || valueLength < 0
+                    || size - position < (long) HEADER_SIZE + keyLength + valueLength + TRAILER_SIZE) {
+                break;
+            }
+            int recordSize = HEADER_SIZE + keyLength + valueLength + TRAILER_SIZE;
+            byte[] body = new byte[recordSize - TRAILER_SIZE];
+            buffer.position((int) position);
+            buffer.get(body);
+            crc.reset();
+            crc.update(body);
+            if ((int) crc.getValue() != buffer.getInt()) {
+                break;
+            }
+
+            String kitID = new String(body, HEADER_SIZE, keyLength, StandardCharsets.UTF_8);
+            Location old;
+            if (type == PUT) {
+                old = index.put(kitID, new Location(segment, position + HEADER_SIZE + keyLength, valueLength, recordSize));
+            } else {
+                old = index.remove(kitID);
+                segment.dead += recordSize;
+            }
+            if (old != null) {
+                old.segment.dead += old.recordSize;
+            }
+            position += recordSize;
+        }
+
+        if (position < size) {
+            if (newest) {
+                plugin.getLogger().warning("Cutting off " + (size - position) + " bytes of incomplete data at the end of " + segment.file.getName());
+                segment.channel.truncate(position);
+            } else {
+                plugin.getLogger().warning("Corrupt data in " + segment.file.getName() + " after byte " + position + ", the rest of the segment is ignored");
+            }
+        }
+        segment.size = position;
+    }
+
+    private void compact() {
+        List<Segment> sealed;
+        synchronized (appendLock) {
+            if (!open) {
+                return;
+            }
+            sealed = new ArrayList<>(segments.headMap(active.id, false).values());
+            long total = 0;
+            long dead = 0;
+            for (Segment segment : sealed) {
+                total += segment.size;
+                dead += segment.dead;
+            }
+            if (sealed.isEmpty() || total == 0 || (double) dead / total < compactionThreshold) {
+                return;
+            }
+        }
+
+        // every sealed segment is rewritten at once, so dropping their tombstones cannot bring an older value back
+        Set<Segment> compacting = new HashSet<>(sealed);
+        List<String> live = new ArrayList<>();
+        index.forEach((kitID, location) -> {
+            if (compacting.contains(location.segment)) {
+                live.add(kitID);
+            }
+        });
+
+        try {
+            for (int i = 0; i < live.size(); i += COMPACTION_BATCH_SIZE) {
+                List<String> batch = live.subList(i, Math.min(i + COMPACTION_BATCH_SIZE, live.size()));
+                Map<String, Location> locations = new HashMap<>();
+                batch.forEach(kitID -> locations.put(kitID, index.get(kitID)));
+                Map<String, byte[]> values = getKitBytesByIDs(batch);
+
+                synchronized (appendLock) {
+                    for (String kitID : batch) {
+                        Location location = locations.get(kitID);
+                        // skip kits that were saved or deleted while copying
+                        if (location == null || index.get(kitID) != location) {
+                            continue;
+                        }
+                        byte[] value = values.get(kitID);
+                        if (value == null) {
+                            throw new IOException("kit " + kitID + " was not copied");
+                        }
+                        append(PUT, kitID, value);
+                    }
+                    sync();
+                }
+            }
+            // the copies are synced, from here on the sealed segments must not be replayed
+            writeManifest(sealed.get(sealed.size() - 1).id);
+        } catch (IOException | StorageReadException e) {
+            plugin.getLogger().warning("Kit storage compaction failed, the segments are kept: " + e.getMessage());
+            return;
+        }
+
+        segmentLock.writeLock().lock();
+        try {
+            for (Segment segment : sealed) {
+                segments.remove(segment.id);
+                segment.close();
+                if (!segment.file.delete()) {
+                    // still mapped on some platforms, the manifest makes the next start skip and delete it
+                    plugin.getLogger().info("Could not delete compacted segment " + segment.file.getName() + " yet, it is removed on the next start");
+                }
+            }
+        } catch (IOException e) {
+            plugin.getLogger().warning("Failed to remove compacted segment: " + e.getMessage());
+        } finally {
+            segmentLock.writeLock().unlock();
+        }
+        plugin.getLogger().info("Compacted " + sealed.size() + " kit storage segments, " + live.size() + " kits kept.");
+    }
+
+    private void importYaml() throws StorageOperationException {
+        Map<String, String> data;
+        try (FileInputStream inputStream = new FileInputStream(yamlFile)) {
+            data = new Yaml().load(inputStream);
+        } catch (IOException e) {
+            throw new StorageOperationException("Failed to read " + yamlFile.getName() + " for import", e);
+        }
+        if (data == null || data.isEmpty()) {
+            return;
+        }
+
+        Map<String, byte[]> kits = new HashMap<>();
+        data.forEach((kitID, value) -> kits.put(kitID, Serializer.decodeStorageText(value)));
+        try {
+            saveKitBytesByIDs(kits);
+        } catch (StorageWriteException e) {
+            throw new StorageOperationException("Failed to import " + yamlFile.getName(), e);
+        }
+        plugin.getLogger().info("Imported " + kits.size() + " kits from " + yamlFile.getName() + ", the file is no longer used.");
+    }
+
+    private int readManifest() throws IOException {
+        File manifest = new File(directory, MANIFEST);
+        if (!manifest.exists()) {
+            return 0;
+        }
+        String content = Files.readString(manifest.toPath(), StandardCharsets.UTF_8).trim();
+        try {
+            return Integer.parseInt(content);
+        } catch (NumberFormatException e) {
+            throw new IOException("Corrupt compaction manifest " + manifest + ": " + content, e);
+        }
+    }
+
+    //replaces the manifest atomically, a crash leaves either the old or the new compaction point
+    private void writeManifest(int segmentId) throws IOException {
+        File temp = new File(directory, MANIFEST + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.wrap(String.valueOf(segmentId).getBytes(StandardCharsets.UTF_8)));
+            if (fsync) {
+                channel.force(true);
+            }
+        }
+        Files.move(temp.toPath(), new File(directory, MANIFEST).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        compactedThrough = segmentId;
+    }
+
+    private Segment newSegment(int id) throws IOException {
+        Segment segment = new Segment(id, segmentFile(id));
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private File segmentFile(int id) {
+        return new File(directory, String.format("%08d", id) + EXTENSION);
+    }
+
+    private static final class Location {
+        final Segment segment;
+        final long offset;
+        final int length;
+        final int recordSize;
+
+        Location(Segment segment, long offset, int length, int recordSize) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.recordSize = recordSize;
+        }
+    }
+
+    private static final class Segment {
+        final int id;
+        final File file;
+        final FileChannel channel;
+        volatile long size;
+        volatile long dead;
+        private volatile MappedByteBuffer map;
+
+        Segment(int id, File file) throws IOException {
+            this.id = id;
+            this.file = file;
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        byte[] read(long offset, int length) throws IOException {
+            MappedByteBuffer current = map;
+            if (current == null || offset + length > current.capacity()) {
+                synchronized (this) {
+                    current = map;
+                    if (current == null || offset + length > current.capacity()) {
+                        // the newest segment keeps growing, map it again up to its current size
+                        current = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                        map = current;
+                    }
+                }
+            }
+            byte[] value = new byte[length];
+            current.get((int) offset, value);
+            return value;
+        }
+
+        void close() throws IOException {
+            map = null;
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,690 @@
+/*
+ * Copyright 2022-2025 Noah Ross
+ *
+ * This file is part of PerPlayerKit.
+ *
+ * PerPlayerKit is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * PerPlayerKit is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with PerPlayerKit. If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.noah.perplayerkit.storage;
+
+import com.github.Anon8281.universalScheduler.scheduling.tasks.MyScheduledTask;
+import dev.noah.perplayerkit.PerPlayerKit;
+import dev.noah.perplayerkit.storage.exceptions.StorageConnectionException;
+import dev.noah.perplayerkit.storage.exceptions.StorageOperationException;
+import dev.noah.perplayerkit.storage.exceptions.StorageReadException;
+import dev.noah.perplayerkit.storage.exceptions.StorageWriteException;
+import dev.noah.perplayerkit.storage.sql.SQLDatabase;
+import dev.noah.perplayerkit.util.IDUtil;
+import dev.noah.perplayerkit.util.Serializer;
+import org.bukkit.plugin.Plugin;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Schema version 2. Player kits are keyed by (player BINARY(16), kind, slot) so loading a player
+ * is a single range scan, and public kits and kit room pages live in their own tables. Kit data is
+ * stored as raw bytes, legacy Base64 rows are converted when they are migrated. Every player kit row
+ * carries a version that each write increases, so servers can write with compare-and-set.
+ * <p>
+ * Rows from the legacy string keyed {@code kits} table are copied over in the background. Until that
+ * finishes, reads that miss the new tables fall back to the legacy table. Ids that do not match a
+ * known format are kept in the legacy table.
+ */
+public class NormalizedSQLStorage implements StorageManager {
+
+    private static final int KIND_KIT = 0;
+    private static final int KIND_ENDERCHEST = 1;
+
+    private static final String PLAYER_TABLE = "ppk_player_kits";
+    private static final String PUBLIC_TABLE = "ppk_public_kits";
+    private static final String KITROOM_TABLE = "ppk_kitroom";
+    private static final String META_TABLE = "ppk_meta";
+
+    private static final String MIGRATION_CURSOR = "legacy_migration_cursor";
+    private static final String MIGRATION_DONE = "legacy_migration_done";
+
+    private final Plugin plugin;
+    private final SQLDatabase db;
+    private final SQLStorage legacy;
+    private final int migrationBatchSize;
+    private final AtomicBoolean migrating = new AtomicBoolean(false);
+
+    private volatile boolean legacyMigrated;
+    private String migrationCursor = "";
+    private long migratedRows;
+    private MyScheduledTask migrationTask;
+
+    public NormalizedSQLStorage(Plugin plugin, SQLDatabase db) {
+        this.plugin = plugin;
+        this.db = db;
+        this.legacy = new SQLStorage(db);
+        this.migrationBatchSize = Math.max(1, plugin.getConfig().getInt("storage.migration-batch-size", 500));
+    }
+
+    private void createTables() throws SQLException {
+        db.write(connection -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + PLAYER_TABLE
+                        + " (player BINARY(16) NOT NULL, kind TINYINT NOT NULL, slot TINYINT NOT NULL, data MEDIUMBLOB NOT NULL,"
+                        + " version BIGINT NOT NULL DEFAULT 0, PRIMARY KEY (player, kind, slot))");
+                // tables created before kit versions were added
+                if (!hasColumn(connection, PLAYER_TABLE, "version")) {
+                    statement.executeUpdate("ALTER TABLE " + PLAYER_TABLE + " ADD COLUMN version BIGINT NOT NULL DEFAULT 0");
+                }
+                statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + PUBLIC_TABLE
+                        + " (id VARCHAR(100) NOT NULL, data MEDIUMBLOB NOT NULL, PRIMARY KEY (id))");
+                statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + KITROOM_TABLE
+                        + " (page TINYINT NOT NULL, data MEDIUMBLOB NOT NULL, PRIMARY KEY (page))");
+                statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + META_TABLE
+                        + " (name VARCHAR(64) NOT NULL, value VARCHAR(255) NOT NULL, PRIMARY KEY (name))");
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void init() throws StorageOperationException {
+        legacy.init();
+        try {
+            createTables();
+            legacyMigrated = "true".equals(readMeta(MIGRATION_DONE));
+            String cursor = readMeta(MIGRATION_CURSOR);
+            migrationCursor = cursor == null ? "" : cursor;
+        } catch (SQLException e) {
+            throw new StorageOperationException("Failed to initialize the database", e);
+        }
+
+        if (!legacyMigrated) {
+            plugin.getLogger().info("Migrating legacy kits table to schema version 2 in the background.");
+            migrationTask = PerPlayerKit.getScheduler().runTaskTimerAsynchronously(this::migrateBatch, 20, 20);
+        }
+    }
+
+    @Override
+    public void connect() throws StorageConnectionException {
+        legacy.connect();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return legacy.isConnected();
+    }
+
+    @Override
+    public void close() throws StorageConnectionException {
+        if (migrationTask != null) {
+            migrationTask.cancel();
+        }
+        legacy.close();
+    }
+
+    @Override
+    public void keepAlive() throws StorageConnectionException {
+        legacy.keepAlive();
+    }
+
+    @Override
+    public List<String> getPoolStats() {
+        return db.getPoolStats();
+    }
+
+    public boolean isLegacyMigrated() {
+        return legacyMigrated;
+    }
+
+    @Override
+    public void saveKitDataByID(String kitID, String data) {
+        saveKitDataByIDs(Collections.singletonMap(kitID, data));
+    }
+
+    @Override
+    public void saveKitBytesByID(String kitID, byte[] data) {
+        saveKitBytesByIDs(Collections.singletonMap(kitID, data));
+    }
+
+    @Override
+    public String getKitDataByID(String kitID) {
+        String data = getKitDataByIDs(Collections.singletonList(kitID)).get(kitID);
+        return data == null ? "Error" : data;
+    }
+
+    @Override
+    public boolean doesKitExistByID(String kitID) {
+        KitKey key = KitKey.parse(kitID);
+        if (key == null) {
+            return legacy.doesKitExistByID(kitID);
+        }
+
+        try {
+            boolean exists = db.read(connection -> {
+                try (PreparedStatement ps = connection.prepareStatement("SELECT 1 FROM " + tableFor(key) + " WHERE " + keyClause(key))) {
+                    bindKey(ps, 1, key);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        return rs.next();
+                    }
+                }
+            });
+            if (exists) {
+                return true;
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return false;
+        }
+        return !legacyMigrated && legacy.doesKitExistByID(kitID);
+    }
+
+    @Override
+    public void deleteKitByID(String kitID) {
+        deleteKitsByIDs(Collections.singletonList(kitID));
+    }
+
+    @Override
+    public Map<String, String> getKitDataByIDs(Collection<String> kitIDs) {
+        Map<String, String> result = new HashMap<>();
+        getKitBytesByIDs(kitIDs).forEach((kitID, data) -> result.put(kitID, Serializer.toStorageText(data)));
+        return result;
+    }
+
+    @Override
+    public void saveKitDataByIDs(Map<String, String> kits) {
+        Map<String, byte[]> binary = new HashMap<>();
+        kits.forEach((kitID, data) -> binary.put(kitID, Serializer.decodeStorageText(data)));
+        saveKitBytesByIDs(binary);
+    }
+
+    @Override
+    public Map<String, byte[]> getKitBytesByIDs(Collection<String> kitIDs) {
+        Map<String, byte[]> result = new HashMap<>();
+        Map<UUID, Set<String>> byPlayer = new LinkedHashMap<>();
+        List<KitKey> others = new ArrayList<>();
+        List<String> unknown = new ArrayList<>();
+
+        for (String kitID : kitIDs) {
+            KitKey key = KitKey.parse(kitID);
+            if (key == null) {
+                unknown.add(kitID);
+            } else if (key.player != null) {
+                byPlayer.computeIfAbsent(key.player, uuid -> new HashSet<>()).add(kitID);
+            } else {
+                others.add(key);
+            }
+        }
+
+        try {
+            db.read(connection -> {
+                readRows(connection, byPlayer, others, result);
+                return null;
+            });
+        } catch (SQLException e) {
+            throw new StorageReadException("Failed to read " + kitIDs.size() + " kits", e);
+        }
+
+        if (!unknown.isEmpty()) {
+            result.putAll(legacy.getKitBytesByIDs(unknown));
+        }
+
+        if (!legacyMigrated) {
+            List<String> missing = new ArrayList<>();
+            for (String kitID : kitIDs) {
+                if (!result.containsKey(kitID)) {
+                    missing.add(kitID);
+                }
+            }
+            if (!missing.isEmpty()) {
+                result.putAll(legacy.getKitBytesByIDs(missing));
+            }
+        }
+        return result;
+    }
+
+    private void readRows(Connection connection, Map<UUID, Set<String>> byPlayer, List<KitKey> others, Map<String, byte[]> result) throws SQLException {
+        if (!byPlayer.isEmpty()) {
+            try (PreparedStatement ps = connection.prepareStatement("SELECT kind, slot, data FROM " + PLAYER_TABLE + " WHERE player = ?")) {
+                for (Map.Entry<UUID, Set<String>> entry : byPlayer.entrySet()) {
+                    ps.setBytes(1, KitKey.uuidToBytes(entry.getKey()));
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            String kitID = playerKitID(entry.getKey(), rs.getInt(1), rs.getInt(2));
+                            if (entry.getValue().contains(kitID)) {
+                                result.put(kitID, rs.getBytes(3));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        for (KitKey key : others) {
+            try (PreparedStatement ps = connection.prepareStatement("SELECT data FROM " + tableFor(key) + " WHERE " + keyClause(key))) {
+                bindKey(ps, 1, key);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) {
+                        result.put(key.toID(), rs.getBytes(1));
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void saveKitBytesByIDs(Map<String, byte[]> kits) {
+        saveKitBytesIfVersion(kits, Collections.emptyMap());
+    }
+
+    @Override
+    public boolean supportsKitVersions() {
+        return true;
+    }
+
+    @Override
+    public Map<String, Long> getKitVersions(Collection<String> kitIDs) {
+        Map<String, Long> result = new HashMap<>();
+        Map<UUID, Set<String>> byPlayer = new LinkedHashMap<>();
+        for (String kitID : kitIDs) {
+            KitKey key = KitKey.parse(kitID);
+            if (key != null && key.player != null) {
+                byPlayer.computeIfAbsent(key.player, uuid -> new HashSet<>()).add(kitID);
+            }
+        }
+        if (byPlayer.isEmpty()) {
+            return result;
+        }
+
+        try {
+            db.read(connection -> {
+                try (PreparedStatement ps = connection.prepareStatement("SELECT kind, slot, version FROM " + PLAYER_TABLE + " WHERE player = ?")) {
+                    for (Map.Entry<UUID, Set<String>> entry : byPlayer.entrySet()) {
+                        ps.setBytes(1, KitKey.uuidToBytes(entry.getKey()));
+                        try (ResultSet rs = ps.executeQuery()) {
+                            while (rs.next()) {
+                                String kitID = playerKitID(entry.getKey(), rs.getInt(1), rs.getInt(2));
+                                if (entry.getValue().contains(kitID)) {
+                                    result.put(kitID, rs.getLong(3));
+                                }
+                            }
+                        }
+                    }
+                }
+                return null;
+            });
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return result;
+    }
+
+    @Override
+    public Set<String> saveKitBytesIfVersion(Map<String, byte[]> kits, Map<String, Long> expected) {
+        Map<String, List<KitKey>> byTable = new HashMap<>();
+        Map<String, byte[]> unknown = new HashMap<>();
+
+        kits.forEach((kitID, data) -> {
+            KitKey key = KitKey.parse(kitID);
+            if (key == null) {
+                unknown.put(kitID, data);
+            } else {
+                byTable.computeIfAbsent(tableFor(key), table -> new ArrayList<>()).add(key);
+            }
+        });
+        List<KitKey> playerKeys = byTable.remove(PLAYER_TABLE);
+
+        Set<String> conflicts = new HashSet<>();
+        try {
+            db.write(connection -> {
+                writeRows(connection, "REPLACE", byTable, key -> kits.get(key.toID()));
+                if (playerKeys != null) {
+                    conflicts.addAll(writePlayerRows(connection, playerKeys, kits, expected));
+                }
+                return null;
+            });
+        } catch (SQLException e) {
+            throw new StorageWriteException("Failed to save " + kits.size() + " kits", e);
+        }
+
+        if (!unknown.isEmpty()) {
+            legacy.saveKitBytesByIDs(unknown);
+        }
+        return conflicts;
+    }
+
+    @Override
+    public int replaceKitBytesIfUnchanged(Map<String, byte[]> kits, Map<String, byte[]> expected) {
+        List<KitKey> keys = new ArrayList<>();
+        Map<String, byte[]> unknown = new HashMap<>();
+        kits.forEach((kitID, data) -> {
+            KitKey key = KitKey.parse(kitID);
+            if (key == null) {
+                unknown.put(kitID, data);
+            } else if (expected.containsKey(kitID)) {
+                keys.add(key);
+            }
+        });
+
+        int replaced = 0;
+        try {
+            replaced = db.write(connection -> {
+                int rows = 0;
+                for (KitKey key : keys) {
+                    // kits still only in the legacy table are not matched and are left for the migration
+                    try (PreparedStatement ps = connection.prepareStatement("UPDATE " + tableFor(key) + " SET data = ? WHERE " + keyClause(key) + " AND data = ?")) {
+                        ps.setBytes(1, kits.get(key.toID()));
+                        ps.setBytes(bindKey(ps, 2, key), expected.get(key.toID()));
+                        rows += ps.executeUpdate();
+                    }
+                }
+                return rows;
+            });
+        } catch (SQLException e) {
+            throw new StorageWriteException("Failed to replace " + keys.size() + " kits", e);
+        }
+
+        if (!unknown.isEmpty()) {
+            replaced += legacy.replaceKitBytesIfUnchanged(unknown, expected);
+        }
+        return replaced;
+    }
+
+    /**
+     * Writes player kit rows one at a time so each write can check and increase the row's version. A REPLACE would
+     * reset the version.
+     *
+     * @return ids whose version did not match the expected one
+     */
+    private Set<String> writePlayerRows(Connection connection, List<KitKey> keys, Map<String, byte[]> kits, Map<String, Long> expected) throws SQLException {
+        Set<String> conflicts = new HashSet<>();
+        String where = " WHERE " + keyClause(keys.get(0));
+        try (PreparedStatement update = connection.prepareStatement("UPDATE " + PLAYER_TABLE + " SET data = ?, version = version + 1" + where);
+             PreparedStatement updateIf = connection.prepareStatement("UPDATE " + PLAYER_TABLE + " SET data = ?, version = version + 1" + where + " AND version = ?");
+             PreparedStatement insert = connection.prepareStatement(db.insertIgnore() + " INTO " + PLAYER_TABLE + " (player, kind, slot, data, version) VALUES (?, ?, ?, ?, 1)")) {
+            for (KitKey key : keys) {
+                byte[] data = kits.get(key.toID());
+                Long version = expected.get(key.toID());
+
+                if (version == null) {
+                    // another server may insert the row between the update and the insert, then update again
+                    if (updateRow(update, key, data, null) == 0 && insertRow(insert, key, data) == 0) {
+                        updateRow(update, key, data, null);
+                    }
+                    continue;
+                }
+                if (updateRow(updateIf, key, data, version) == 0 && (version != 0 || insertRow(insert, key, data) == 0)) {
+                    conflicts.add(key.toID());
+                }
+            }
+        }
+        return conflicts;
+    }
+
+    private static int updateRow(PreparedStatement ps, KitKey key, byte[] data, Long version) throws SQLException {
+        ps.setBytes(1, data);
+        int index = bindKey(ps, 2, key);
+        if (version != null) {
+            ps.setLong(index, version);
+        }
+        return ps.executeUpdate();
+    }
+
+    private static int insertRow(PreparedStatement ps, KitKey key, byte[] data) throws SQLException {
+        ps.setBytes(bindKey(ps, 1, key), data);
+        return ps.executeUpdate();
+    }
+
+    @Override
+    public void deleteKitsByIDs(Collection<String> kitIDs) {
+        List<String> unknown = new ArrayList<>();
+        Map<String, List<KitKey>> byTable = new HashMap<>();
+
+        for (String kitID : kitIDs) {
+            KitKey key = KitKey.parse(kitID);
+            if (key == null) {
+                unknown.add(kitID);
+            } else {
+                byTable.computeIfAbsent(tableFor(key), table -> new ArrayList<>()).add(key);
+            }
+        }
+
+        try {
+            db.write(connection -> {
+                for (Map.Entry<String, List<KitKey>> entry : byTable.entrySet()) {
+                    List<KitKey> keys = entry.getValue();
+                    try (PreparedStatement ps = connection.prepareStatement("DELETE FROM " + entry.getKey() + " WHERE " + keyClause(keys.get(0)))) {
+                        for (KitKey key : keys) {
+                            bindKey(ps, 1, key);
+                            ps.addBatch();
+                        }
+                        ps.executeBatch();
+                    }
+                }
+                return null;
+            });
+        } catch (SQLException e) {
+            throw new StorageWriteException("Failed to delete " + kitIDs.size() + " kits", e);
+        }
+
+        // until the migration is done a legacy row would otherwise be read or copied back
+        if (!legacyMigrated) {
+            legacy.deleteKitsByIDs(kitIDs);
+        } else if (!unknown.isEmpty()) {
+            legacy.deleteKitsByIDs(unknown);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * While the legacy migration is running, legacy rows past the migration cursor are included as well, so a kit
+     * saved since startup may be seen twice.
+     */
+    @Override
+    public void forEachKit(BiConsumer<String, byte[]> consumer) {
+        // rows are read a page at a time and handed out after the connection is released
+        try {
+            byte[][] player = {new byte[16]};
+            int[] position = {-1, -1};
+            Map<String, byte[]> page;
+            do {
+                page = db.read(connection -> {
+                    Map<String, byte[]> rows = new LinkedHashMap<>();
+                    try (PreparedStatement ps = connection.prepareStatement("SELECT player, kind, slot, data FROM " + PLAYER_TABLE
+                            + " WHERE (player, kind, slot) > (?, ?, ?) ORDER BY player, kind, slot LIMIT ?")) {
+                        ps.setBytes(1, player[0]);
+                        ps.setInt(2, position[0]);
+                        ps.setInt(3, position[1]);
+                        ps.setInt(4, SQLStorage.SCAN_BATCH_SIZE);
+                        try (ResultSet rs = ps.executeQuery()) {
+                            while (rs.next()) {
+                                player[0] = rs.getBytes(1);
+                                position[0] = rs.getInt(2);
+                                position[1] = rs.getInt(3);
+                                rows.put(playerKitID(KitKey.uuidFromBytes(player[0]), position[0], position[1]), rs.getBytes(4));
+                            }
+                        }
+                    }
+                    return rows;
+                });
+                page.forEach(consumer);
+            } while (!page.isEmpty());
+
+            db.read(connection -> {
+                Map<String, byte[]> rows = new LinkedHashMap<>();
+                try (Statement statement = connection.createStatement()) {
+                    try (ResultSet rs = statement.executeQuery("SELECT id, data FROM " + PUBLIC_TABLE)) {
+                        while (rs.next()) {
+                            rows.put(IDUtil.getPublicKitId(rs.getString(1)), rs.getBytes(2));
+                        }
+                    }
+                    try (ResultSet rs = statement.executeQuery("SELECT page, data FROM " + KITROOM_TABLE)) {
+                        while (rs.next()) {
+                            rows.put(IDUtil.getKitRoomId(rs.getInt(1)), rs.getBytes(2));
+                        }
+                    }
+                }
+                return rows;
+            }).forEach(consumer);
+        } catch (SQLException e) {
+            throw new StorageReadException("Failed to read every kit", e);
+        }
+
+        boolean migrated = legacyMigrated;
+        String cursor = migrationCursor;
+        legacy.forEachKit((kitID, data) -> {
+            if (KitKey.parse(kitID) == null || (!migrated && kitID.compareTo(cursor) > 0)) {
+                consumer.accept(kitID, data);
+            }
+        });
+    }
+
+    private void migrateBatch() {
+        if (legacyMigrated || !migrating.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            Map<String, byte[]> rows = legacy.readAfter(migrationCursor, migrationBatchSize);
+
+            if (rows.isEmpty()) {
+                db.write(connection -> {
+                    writeMeta(connection, MIGRATION_DONE, "true");
+                    return null;
+                });
+                legacyMigrated = true;
+                if (migrationTask != null) {
+                    migrationTask.cancel();
+                }
+                plugin.getLogger().info("Legacy kit migration complete, " + migratedRows + " legacy rows processed.");
+                return;
+            }
+
+            Map<String, List<KitKey>> byTable = new HashMap<>();
+            for (String kitID : rows.keySet()) {
+                KitKey key = KitKey.parse(kitID);
+                if (key != null) {
+                    byTable.computeIfAbsent(tableFor(key), table -> new ArrayList<>()).add(key);
+                }
+            }
+
+            String lastID = null;
+            for (String kitID : rows.keySet()) {
+                lastID = kitID;
+            }
+            String cursor = lastID;
+
+            db.write(connection -> {
+                // rows written since startup are newer than the legacy copy, so never overwrite them
+                writeRows(connection, db.insertIgnore(), byTable, key -> Serializer.decodeStoredBytes(rows.get(key.toID())));
+                writeMeta(connection, MIGRATION_CURSOR, cursor);
+                return null;
+            });
+            migrationCursor = cursor;
+            migratedRows += rows.size();
+        } catch (SQLException e) {
+            plugin.getLogger().warning("Legacy kit migration batch failed, retrying: " + e.getMessage());
+        } finally {
+            migrating.set(false);
+        }
+    }
+
+    private void writeRows(Connection connection, String verb, Map<String, List<KitKey>> byTable, Function<KitKey, byte[]> data) throws SQLException {
+        for (Map.Entry<String, List<KitKey>> entry : byTable.entrySet()) {
+            List<KitKey> keys = entry.getValue();
+            try (PreparedStatement ps = connection.prepareStatement(verb + " INTO " + entry.getKey() + " (" + keyColumns(keys.get(0)) + ", data) VALUES ("
+                    + SQLStorage.placeholders(keyColumnCount(keys.get(0)) + 1) + ")")) {
+                for (KitKey key : keys) {
+                    int index = bindKey(ps, 1, key);
+                    ps.setBytes(index, data.apply(key));
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        }
+    }
+
+    private String readMeta(String name) throws SQLException {
+        return db.read(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement("SELECT value FROM " + META_TABLE + " WHERE name = ?")) {
+                ps.setString(1, name);
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next() ? rs.getString(1) : null;
+                }
+            }
+        });
+    }
+
+    private void writeMeta(Connection connection, String name, String value) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("REPLACE INTO " + META_TABLE + " (name, value) VALUES (?, ?)")) {
+            ps.setString(1, name);
+            ps.setString(2, value);
+            ps.executeUpdate();
+        }
+    }
+
+    private static boolean hasColumn(Connection connection, String table, String column) throws SQLException {
+        try (ResultSet rs = connection.getMetaData().getColumns(connection.getCatalog(), null, table, column)) {
+            return rs.next();
+        }
+    }
+
+    private static String playerKitID(UUID player, int kind, int slot) {
+        return kind == KIND_ENDERCHEST ? IDUtil.getECId(player, slot) : IDUtil.getPlayerKitId(player, slot);
+    }
+
+    private static String tableFor(KitKey key) {
+        return switch (key.type) {
+            case KIT, ENDERCHEST -> PLAYER_TABLE;
+            case PUBLIC -> PUBLIC_TABLE;
+            case KITROOM -> KITROOM_TABLE;
+        };
+    }
+
+    private static String keyColumns(KitKey key) {
+        return switch (key.type) {
+            case KIT, ENDERCHEST -> "player, kind, slot";
+            case PUBLIC -> "id";
+            case KITROOM -> "page";
+        };
+    }
+
+    private static int keyColumnCount(KitKey key) {
+        return key.player != null ? 3 : 1;
+    }
+
+    private static String keyClause(KitKey key) {
+        return switch (key.type) {
+            case KIT, ENDERCHEST -> "player = ? AND kind = ? AND slot = ?";
+            case PUBLIC -> "id = ?";
+            case KITROOM -> "page = ?";
+        };
+    }
+
+    private static int bindKey(PreparedStatement ps, int index, KitKey key) throws SQLException {
+        switch (key.type) {
+            case KIT, ENDERCHEST -> {
+                ps.setBytes(index++, KitKey.uuidToBytes(key.player));
+                ps.setInt(index++, key.type == KitKey.Type.ENDERCHEST ? KIND_ENDERCHEST : KIND_KIT);
+                ps.setInt(index++, key.slot);
+            }
+            case PUBLIC -> ps.setString(index++, key.name);
+            case KITROOM -> ps.setInt(index++, key.slot);
+        }
+        return index;
+    }
+}
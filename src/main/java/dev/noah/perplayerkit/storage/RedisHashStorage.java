@@ -0,0 +1,473 @@
+/*
+ * Copyright 2022-2025 Noah Ross
+ *
+ * This file is part of PerPlayerKit.
+ *
+ * PerPlayerKit is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * PerPlayerKit is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with PerPlayerKit. If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.noah.perplayerkit.storage;
+
+import dev.noah.perplayerkit.storage.exceptions.StorageConnectionException;
+import dev.noah.perplayerkit.storage.exceptions.StorageReadException;
+import dev.noah.perplayerkit.storage.exceptions.StorageWriteException;
+import dev.noah.perplayerkit.util.IDUtil;
+import dev.noah.perplayerkit.util.Serializer;
+import org.bukkit.plugin.Plugin;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.params.ScanParams;
+import redis.clients.jedis.resps.ScanResult;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Redis layout with one hash per player, {@code ppk:<uuid>} with fields {@code k1..k9} and {@code ec1..ec9}, and
+ * shared hashes for public kits, kit room pages and anything else. Loading a player is a single HGETALL.
+ * <p>
+ * Kits stored under the old flat keys are moved into the hashes the first time they are read. A player hash gets a
+ * {@value #MIGRATED_FIELD} field once the player's old keys have been checked, so later loads skip that check.
+ * <p>
+ * Each player kit field has a version field next to it, {@code v:k1} for {@code k1}, that every write increases.
+ * Compare-and-set writes check it in a Lua script.
+ */
+public class RedisHashStorage implements StorageManager {
+
+    private static final String PREFIX = "ppk:";
+    private static final String PUBLIC_HASH = PREFIX + "public";
+    private static final String KITROOM_HASH = PREFIX + "kitroom";
+    private static final String MISC_HASH = PREFIX + "misc";
+    private static final String MIGRATED_FIELD = "_v";
+    private static final String VERSION_PREFIX = "v:";
+    private static final int SCAN_BATCH_SIZE = 500;
+    // KEYS[1] hash, ARGV version field, expected version, data field, data
+    private static final byte[] CAS_SCRIPT = bytes(
+            "if (redis.call('HGET', KEYS[1], ARGV[1]) or '0') ~= ARGV[2] then return 0 end "
+                    + "redis.call('HSET', KEYS[1], ARGV[3], ARGV[4]) "
+                    + "redis.call('HINCRBY', KEYS[1], ARGV[1], 1) "
+                    + "return 1");
+    // KEYS[1] hash, ARGV field, expected data, new data
+    private static final byte[] REPLACE_SCRIPT = bytes(
+            "if redis.call('HGET', KEYS[1], ARGV[1]) ~= ARGV[2] then return 0 end "
+                    + "redis.call('HSET', KEYS[1], ARGV[1], ARGV[3]) "
+                    + "return 1");
+
+    private final Plugin plugin;
+    private final RedisStorage flat;
+    // public, kit room and misc ids whose old flat key was looked for and not found, so a missing entry costs one
+    // HMGET instead of an extra MGET on every read. Bounded by the ids the plugin asks for
+    private final Set<String> checkedFlatKeys = ConcurrentHashMap.newKeySet();
+
+    public RedisHashStorage(Plugin plugin) {
+        this.plugin = plugin;
+        this.flat = new RedisStorage(plugin);
+    }
+
+    @Override
+    public boolean isConnected() {
+        return flat.isConnected();
+    }
+
+    @Override
+    public void connect() {
+        flat.connect();
+    }
+
+    @Override
+    public void init() {
+        plugin.getLogger().info("Using Redis hash layout, old keys are migrated as they are read.");
+    }
+
+    @Override
+    public void close() {
+        flat.close();
+    }
+
+    @Override
+    public void keepAlive() throws StorageConnectionException {
+        flat.keepAlive();
+    }
+
+    @Override
+    public void saveKitDataByID(String kitID, String data) {
+        saveKitBytesByID(kitID, Serializer.decodeStorageText(data));
+    }
+
+    @Override
+    public String getKitDataByID(String kitID) {
+        byte[] data = getKitBytesByID(kitID);
+        return data == null ? "Error" : Serializer.toStorageText(data);
+    }
+
+    @Override
+    public boolean doesKitExistByID(String kitID) {
+        return getKitBytesByID(kitID) != null;
+    }
+
+    @Override
+    public void deleteKitByID(String kitID) {
+        deleteKitsByIDs(Collections.singletonList(kitID));
+    }
+
+    @Override
+    public void saveKitBytesByID(String kitID, byte[] data) {
+        saveKitBytesByIDs(Collections.singletonMap(kitID, data));
+    }
+
+    @Override
+    public Map<String, String> getKitDataByIDs(Collection<String> kitIDs) {
+        Map<String, String> result = new HashMap<>();
+        getKitBytesByIDs(kitIDs).forEach((kitID, data) -> result.put(kitID, Serializer.toStorageText(data)));
+        return result;
+    }
+
+    @Override
+    public void saveKitDataByIDs(Map<String, String> kits) {
+        Map<String, byte[]> binary = new HashMap<>();
+        kits.forEach((kitID, data) -> binary.put(kitID, Serializer.decodeStorageText(data)));
+        saveKitBytesByIDs(binary);
+    }
+
+    @Override
+    public Map<String, byte[]> getKitBytesByIDs(Collection<String> kitIDs) {
+        return readKits(kitIDs, null);
+    }
+
+    //the version fields are in the same hashes as the kits, so both come back from one HGETALL per player
+    @Override
+    public Map<String, byte[]> getKitBytesWithVersions(Collection<String> kitIDs, Map<String, Long> versions) {
+        return readKits(kitIDs, versions);
+    }
+
+    private Map<String, byte[]> readKits(Collection<String> kitIDs, Map<String, Long> versions) {
+        Map<String, byte[]> result = new HashMap<>();
+        if (kitIDs.isEmpty()) {
+            return result;
+        }
+
+        Map<UUID, List<String>> byPlayer = new LinkedHashMap<>();
+        Map<String, List<String>> byHash = new LinkedHashMap<>();
+        for (String kitID : kitIDs) {
+            KitKey key = KitKey.parse(kitID);
+            if (key != null && key.player != null) {
+                byPlayer.computeIfAbsent(key.player, uuid -> new ArrayList<>()).add(kitID);
+            } else {
+                byHash.computeIfAbsent(hash(key), hash -> new ArrayList<>()).add(kitID);
+            }
+        }
+
+        List<UUID> unmigrated = new ArrayList<>();
+        List<String> missing = new ArrayList<>();
+        try (Jedis jedis = flat.getConnection(); Pipeline pipeline = jedis.pipelined()) {
+            Map<UUID, Response<Map<byte[], byte[]>>> players = new LinkedHashMap<>();
+            byPlayer.keySet().forEach(uuid -> players.put(uuid, pipeline.hgetAll(bytes(PREFIX + uuid))));
+            Map<String, Response<List<byte[]>>> hashes = new LinkedHashMap<>();
+            byHash.forEach((hash, ids) -> hashes.put(hash, pipeline.hmget(bytes(hash), ids.stream().map(id -> bytes(field(id))).toArray(byte[][]::new))));
+            pipeline.sync();
+
+            players.forEach((uuid, response) -> {
+                Map<String, byte[]> fields = new HashMap<>();
+                response.get().forEach((field, data) -> fields.put(new String(field, StandardCharsets.UTF_8), data));
+                if (!fields.containsKey(MIGRATED_FIELD)) {
+                    unmigrated.add(uuid);
+                }
+                for (String kitID : byPlayer.get(uuid)) {
+                    byte[] data = fields.get(field(kitID));
+                    if (data != null) {
+                        result.put(kitID, data);
+                    }
+                    byte[] version = fields.get(VERSION_PREFIX + field(kitID));
+                    if (versions != null && version != null) {
+                        versions.put(kitID, Long.parseLong(new String(version, StandardCharsets.UTF_8)));
+                    }
+                }
+            });
+            hashes.forEach((hash, response) -> {
+                List<String> ids = byHash.get(hash);
+                List<byte[]> values = response.get();
+                for (int i = 0; i < ids.size(); i++) {
+                    if (values.get(i) != null) {
+                        result.put(ids.get(i), values.get(i));
+                    } else if (!checkedFlatKeys.contains(ids.get(i))) {
+                        missing.add(ids.get(i));
+                    }
+                }
+            });
+        } catch (Exception e) {
+            throw new StorageReadException("Failed to read " + kitIDs.size() + " kits", e);
+        }
+
+        for (UUID uuid : unmigrated) {
+            migratePlayer(uuid).forEach((kitID, data) -> {
+                if (byPlayer.get(uuid).contains(kitID)) {
+                    result.putIfAbsent(kitID, data);
+                }
+            });
+        }
+        if (!missing.isEmpty()) {
+            result.putAll(migrateKeys(readFlatKeys(missing)));
+        }
+        return result;
+    }
+
+    //reads old flat keys of shared kits and remembers the ones that do not exist
+    private Map<String, byte[]> readFlatKeys(List<String> kitIDs) {
+        Map<String, byte[]> old = flat.getKitBytesByIDs(kitIDs);
+        kitIDs.stream().filter(kitID -> !old.containsKey(kitID)).forEach(checkedFlatKeys::add);
+        return old;
+    }
+
+    @Override
+    public void saveKitBytesByIDs(Map<String, byte[]> kits) {
+        saveKitBytesIfVersion(kits, Collections.emptyMap());
+    }
+
+    @Override
+    public boolean supportsKitVersions() {
+        return true;
+    }
+
+    @Override
+    public Map<String, Long> getKitVersions(Collection<String> kitIDs) {
+        Map<String, Long> result = new HashMap<>();
+        Map<String, Response<byte[]>> responses = new LinkedHashMap<>();
+        try (Jedis jedis = flat.getConnection(); Pipeline pipeline = jedis.pipelined()) {
+            for (String kitID : kitIDs) {
+                KitKey key = KitKey.parse(kitID);
+                if (key != null && key.player != null) {
+                    responses.put(kitID, pipeline.hget(bytes(hash(key)), bytes(VERSION_PREFIX + field(kitID))));
+                }
+            }
+            pipeline.sync();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return result;
+        }
+
+        responses.forEach((kitID, response) -> {
+            byte[] version = response.get();
+            if (version != null) {
+                result.put(kitID, Long.parseLong(new String(version, StandardCharsets.UTF_8)));
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public Set<String> saveKitBytesIfVersion(Map<String, byte[]> kits, Map<String, Long> expected) {
+        Set<String> conflicts = new HashSet<>();
+        if (kits.isEmpty()) {
+            return conflicts;
+        }
+
+        Map<String, Response<Object>> conditional = new HashMap<>();
+        try (Jedis jedis = flat.getConnection(); Pipeline pipeline = jedis.pipelined()) {
+            kits.forEach((kitID, data) -> {
+                KitKey key = KitKey.parse(kitID);
+                byte[] hash = bytes(hash(key));
+                String field = field(kitID);
+                Long version = expected.get(kitID);
+                if (key == null || key.player == null) {
+                    pipeline.hset(hash, bytes(field), data);
+                } else if (version == null) {
+                    pipeline.hset(hash, bytes(field), data);
+                    pipeline.hincrBy(hash, bytes(VERSION_PREFIX + field), 1);
+                } else {
+                    conditional.put(kitID, pipeline.eval(CAS_SCRIPT, List.of(hash),
+                            List.of(bytes(VERSION_PREFIX + field), bytes(String.valueOf(version)), bytes(field), data)));
+                }
+            });
+            pipeline.sync();
+        } catch (Exception e) {
+            throw new StorageWriteException("Failed to save " + kits.size() + " kits", e);
+        }
+
+        conditional.forEach((kitID, response) -> {
+            if (!Long.valueOf(1).equals(response.get())) {
+                conflicts.add(kitID);
+            }
+        });
+        return conflicts;
+    }
+
+    @Override
+    public int replaceKitBytesIfUnchanged(Map<String, byte[]> kits, Map<String, byte[]> expected) {
+        List<Response<Object>> responses = new ArrayList<>();
+        try (Jedis jedis = flat.getConnection(); Pipeline pipeline = jedis.pipelined()) {
+            kits.forEach((kitID, data) -> {
+                if (expected.containsKey(kitID)) {
+                    responses.add(pipeline.eval(REPLACE_SCRIPT, List.of(bytes(hash(KitKey.parse(kitID)))),
+                            List.of(bytes(field(kitID)), expected.get(kitID), data)));
+                }
+            });
+            pipeline.sync();
+        } catch (Exception e) {
+            throw new StorageWriteException("Failed to replace " + kits.size() + " kits", e);
+        }
+        return (int) responses.stream().filter(response -> Long.valueOf(1).equals(response.get())).count();
+    }
+
+    @Override
+    public void deleteKitsByIDs(Collection<String> kitIDs) {
+        if (kitIDs.isEmpty()) {
+            return;
+        }
+
+        try (Jedis jedis = flat.getConnection(); Pipeline pipeline = jedis.pipelined()) {
+            for (String kitID : kitIDs) {
+                pipeline.hdel(bytes(hash(KitKey.parse(kitID))), bytes(field(kitID)), bytes(VERSION_PREFIX + field(kitID)));
+                // an old key that has not been migrated yet would otherwise come back
+                pipeline.del(bytes(kitID));
+            }
+            pipeline.sync();
+        } catch (Exception e) {
+            throw new StorageWriteException("Failed to delete " + kitIDs.size() + " kits", e);
+        }
+    }
+
+    @Override
+    public void forEachKit(BiConsumer<String, byte[]> consumer) {
+        ScanParams params = new ScanParams().match(PREFIX + "*").count(SCAN_BATCH_SIZE);
+        String cursor = ScanParams.SCAN_POINTER_START;
+        try (Jedis jedis = flat.getConnection()) {
+            do {
+                ScanResult<String> scan = jedis.scan(cursor, params);
+                cursor = scan.getCursor();
+                Map<String, Response<Map<byte[], byte[]>>> hashes = new LinkedHashMap<>();
+                try (Pipeline pipeline = jedis.pipelined()) {
+                    scan.getResult().forEach(hash -> hashes.put(hash, pipeline.hgetAll(bytes(hash))));
+                    pipeline.sync();
+                }
+                hashes.forEach((hash, response) -> response.get().forEach((field, data) -> {
+                    String kitID = kitID(hash, new String(field, StandardCharsets.UTF_8));
+                    if (kitID != null) {
+                        consumer.accept(kitID, data);
+                    }
+                }));
+            } while (!cursor.equals(ScanParams.SCAN_POINTER_START));
+        } catch (Exception e) {
+            throw new StorageReadException("Failed to scan kits", e);
+        }
+
+        // kits that are still under the old flat keys, the flat scan only reads plugin ids so the hashes are skipped
+        flat.forEachKit(consumer);
+    }
+
+    @Override
+    public List<String> getPoolStats() {
+        return flat.getPoolStats();
+    }
+
+    private Map<String, byte[]> migratePlayer(UUID uuid) {
+        List<String> ids = new ArrayList<>(18);
+        for (int slot = 1; slot < 10; slot++) {
+            ids.add(IDUtil.getPlayerKitId(uuid, slot));
+            ids.add(IDUtil.getECId(uuid, slot));
+        }
+        Map<String, byte[]> migrated = migrateKeys(flat.getKitBytesByIDs(ids));
+
+        try (Jedis jedis = flat.getConnection()) {
+            jedis.hset(bytes(PREFIX + uuid), bytes(MIGRATED_FIELD), bytes("1"));
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return migrated;
+    }
+
+    /**
+     * Copies kits found under old flat keys into their hashes and removes the old keys. Fields that were already
+     * written to the hash are kept.
+     *
+     * @param old kits read from the old keys
+     * @return the migrated kits
+     */
+    private Map<String, byte[]> migrateKeys(Map<String, byte[]> old) {
+        if (old.isEmpty()) {
+            return old;
+        }
+
+        Map<String, byte[]> migrated = new HashMap<>();
+        try (Jedis jedis = flat.getConnection(); Pipeline pipeline = jedis.pipelined()) {
+            old.forEach((kitID, data) -> {
+                // the old layout could hold Base64 text, the hashes always hold raw bytes
+                byte[] raw = Serializer.decodeStoredBytes(data);
+                pipeline.hsetnx(bytes(hash(KitKey.parse(kitID))), bytes(field(kitID)), raw);
+                pipeline.del(bytes(kitID));
+                migrated.put(kitID, raw);
+            });
+            pipeline.sync();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return migrated;
+    }
+
+    private static String hash(KitKey key) {
+        if (key == null) {
+            return MISC_HASH;
+        }
+        return switch (key.type) {
+            case KIT, ENDERCHEST -> PREFIX + key.player;
+            case PUBLIC -> PUBLIC_HASH;
+            case KITROOM -> KITROOM_HASH;
+        };
+    }
+
+    private static String field(String kitID) {
+        KitKey key = KitKey.parse(kitID);
+        if (key == null) {
+            return kitID;
+        }
+        return switch (key.type) {
+            case KIT -> "k" + key.slot;
+            case ENDERCHEST -> "ec" + key.slot;
+            case PUBLIC -> key.name;
+            case KITROOM -> String.valueOf(key.slot);
+        };
+    }
+
+    private static String kitID(String hash, String field) {
+        if (field.equals(MIGRATED_FIELD)) {
+            return null;
+        }
+        try {
+            switch (hash) {
+                case PUBLIC_HASH:
+                    return IDUtil.getPublicKitId(field);
+                case KITROOM_HASH:
+                    return IDUtil.getKitRoomId(Integer.parseInt(field));
+                case MISC_HASH:
+                    return field;
+                default:
+                    if (field.startsWith(VERSION_PREFIX)) {
+                        return null;
+                    }
+                    UUID player = UUID.fromString(hash.substring(PREFIX.length()));
+                    return field.startsWith("ec")
+                            ? IDUtil.getECId(player, Integer.parseInt(field.substring(2)))
+                            : IDUtil.getPlayerKitId(player, Integer.parseInt(field.substring(1)));
+            }
+        } catch (IllegalArgumentException e) {
+            // not one of ours
+            return null;
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
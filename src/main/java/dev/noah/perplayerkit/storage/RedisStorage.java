@@ -19,35 +19,55 @@
 package dev.noah.perplayerkit.storage;
 
 import dev.noah.perplayerkit.PerPlayerKit;
+import dev.noah.perplayerkit.storage.exceptions.StorageReadException;
+import dev.noah.perplayerkit.storage.exceptions.StorageWriteException;
+import dev.noah.perplayerkit.util.Serializer;
 import org.bukkit.plugin.Plugin;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.params.ScanParams;
+import redis.clients.jedis.resps.ScanResult;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
 
 public class RedisStorage implements StorageManager {
 
-    private final String host;
-    private final int port;
-    private final String password;
+    private static final int SCAN_BATCH_SIZE = 500;
+    // ids from IDUtil that KitKey does not parse
+    private static final String[] OTHER_ID_PREFIXES = {"dictionary", "templates", "marker"};
     private JedisPool pool;
 
     private Plugin plugin;
     public RedisStorage(Plugin plugin) {
         this.plugin = plugin;
-        this.host = plugin.getConfig().getString("redis.host");
-        this.port = plugin.getConfig().getInt("redis.port") == 0 ? Integer.parseInt(plugin.getConfig().getString("redis.port","6379")) : plugin.getConfig().getInt("redis.port");
-        this.password = plugin.getConfig().getString("redis.password");
+    }
+
+    /**
+     * Creates a pool from the redis section of the config.
+     */
+    public static JedisPool createPool(Plugin plugin) {
+        String host = plugin.getConfig().getString("redis.host");
+        int port = plugin.getConfig().getInt("redis.port") == 0 ? Integer.parseInt(plugin.getConfig().getString("redis.port","6379")) : plugin.getConfig().getInt("redis.port");
+        String password = plugin.getConfig().getString("redis.password");
+
+        JedisPoolConfig poolConfig = new JedisPoolConfig();
+        if (password == null || password.isEmpty()) {
+            return new JedisPool(poolConfig, host, port);
+        }
+        return new JedisPool(poolConfig, host, port, 2000, password);
     }
 
     @Override
     public void connect() {
         if (pool == null) {
-            JedisPoolConfig poolConfig = new JedisPoolConfig();
-            if (password == null || password.isEmpty()) {
-                pool = new JedisPool(poolConfig, host, port);
-            } else {
-                pool = new JedisPool(poolConfig, host, port, 2000, password);
-            }
+            pool = createPool(plugin);
         }
     }
 
@@ -90,18 +110,31 @@ public class RedisStorage implements StorageManager {
         try (Jedis jedis = getConnection()) {
             jedis.set(kitID, data);
         } catch (Exception e) {
-            e.printStackTrace();
+            throw new StorageWriteException("Failed to save kit " + kitID, e);
         }
     }
 
     @Override
     public String getKitDataByID(String kitID) {
+        byte[] data = getKitBytesByID(kitID);
+        return data == null ? "Error" : Serializer.toStorageText(data);
+    }
+
+    @Override
+    public byte[] getKitBytesByID(String kitID) {
         try (Jedis jedis = getConnection()) {
-            String data = jedis.get(kitID);
-            return data == null ? "Error" : data;
+            return jedis.get(key(kitID));
         } catch (Exception e) {
-            e.printStackTrace();
-            return "Error";
+            throw new StorageReadException("Failed to read kit " + kitID, e);
+        }
+    }
+
+    @Override
+    public void saveKitBytesByID(String kitID, byte[] data) {
+        try (Jedis jedis = getConnection()) {
+            jedis.set(key(kitID), data);
+        } catch (Exception e) {
+            throw new StorageWriteException("Failed to save kit " + kitID, e);
         }
     }
 
@@ -120,11 +153,137 @@ public class RedisStorage implements StorageManager {
         try (Jedis jedis = getConnection()) {
             jedis.del(kitID);
         } catch (Exception e) {
-            e.printStackTrace();
+            throw new StorageWriteException("Failed to delete kit " + kitID, e);
+        }
+    }
+
+    @Override
+    public Map<String, String> getKitDataByIDs(Collection<String> kitIDs) {
+        Map<String, String> result = new HashMap<>();
+        getKitBytesByIDs(kitIDs).forEach((kitID, data) -> result.put(kitID, Serializer.toStorageText(data)));
+        return result;
+    }
+
+    @Override
+    public Map<String, byte[]> getKitBytesByIDs(Collection<String> kitIDs) {
+        Map<String, byte[]> result = new HashMap<>();
+        if (kitIDs.isEmpty()) {
+            return result;
+        }
+
+        String[] ids = kitIDs.toArray(new String[0]);
+        byte[][] keys = new byte[ids.length][];
+        for (int i = 0; i < ids.length; i++) {
+            keys[i] = key(ids[i]);
+        }
+
+        try (Jedis jedis = getConnection()) {
+            List<byte[]> values = jedis.mget(keys);
+            for (int i = 0; i < ids.length; i++) {
+                if (values.get(i) != null) {
+                    result.put(ids[i], values.get(i));
+                }
+            }
+        } catch (Exception e) {
+            throw new StorageReadException("Failed to read " + ids.length + " kits", e);
+        }
+        return result;
+    }
+
+    @Override
+    public void saveKitBytesByIDs(Map<String, byte[]> kits) {
+        if (kits.isEmpty()) {
+            return;
         }
+
+        try (Jedis jedis = getConnection(); Pipeline pipeline = jedis.pipelined()) {
+            kits.forEach((kitID, data) -> pipeline.set(key(kitID), data));
+            pipeline.sync();
+        } catch (Exception e) {
+            throw new StorageWriteException("Failed to save " + kits.size() + " kits", e);
+        }
+    }
+
+    @Override
+    public void saveKitDataByIDs(Map<String, String> kits) {
+        if (kits.isEmpty()) {
+            return;
+        }
+
+        try (Jedis jedis = getConnection(); Pipeline pipeline = jedis.pipelined()) {
+            kits.forEach(pipeline::set);
+            pipeline.sync();
+        } catch (Exception e) {
+            throw new StorageWriteException("Failed to save " + kits.size() + " kits", e);
+        }
+    }
+
+    @Override
+    public void deleteKitsByIDs(Collection<String> kitIDs) {
+        if (kitIDs.isEmpty()) {
+            return;
+        }
+
+        try (Jedis jedis = getConnection()) {
+            jedis.del(kitIDs.toArray(new String[0]));
+        } catch (Exception e) {
+            throw new StorageWriteException("Failed to delete " + kitIDs.size() + " kits", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The database can be shared with other applications, so only keys in the plugin's id formats are read.
+     */
+    @Override
+    public void forEachKit(BiConsumer<String, byte[]> consumer) {
+        ScanParams params = new ScanParams().count(SCAN_BATCH_SIZE);
+        String cursor = ScanParams.SCAN_POINTER_START;
+        try (Jedis jedis = getConnection()) {
+            do {
+                ScanResult<String> scan = jedis.scan(cursor, params);
+                cursor = scan.getCursor();
+                List<String> kitIDs = scan.getResult().stream().filter(RedisStorage::isPluginKey).toList();
+                if (!kitIDs.isEmpty()) {
+                    getKitBytesByIDs(kitIDs).forEach(consumer);
+                }
+            } while (!cursor.equals(ScanParams.SCAN_POINTER_START));
+        } catch (StorageReadException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new StorageReadException("Failed to scan kits", e);
+        }
+    }
+
+    @Override
+    public List<String> getPoolStats() {
+        if (pool == null) {
+            return List.of("Redis pool is not connected");
+        }
+        return List.of(
+                "Connections: " + pool.getNumActive() + " active, " + pool.getNumIdle() + " idle",
+                "Threads waiting: " + pool.getNumWaiters(),
+                "Acquire time: avg " + pool.getMeanBorrowWaitTimeMillis() + " ms, max " + pool.getMaxBorrowWaitTimeMillis() + " ms");
+    }
+
+    private static boolean isPluginKey(String key) {
+        if (KitKey.parse(key) != null) {
+            return true;
+        }
+        for (String prefix : OTHER_ID_PREFIXES) {
+            if (key.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static byte[] key(String kitID) {
+        return kitID.getBytes(StandardCharsets.UTF_8);
     }
 
-    private Jedis getConnection() {
+    Jedis getConnection() {
         if (pool == null) {
             throw new IllegalStateException("Redis pool is not initialized. Call connect() first.");
         }
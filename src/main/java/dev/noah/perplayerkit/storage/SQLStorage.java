@@ -20,15 +20,25 @@ package dev.noah.perplayerkit.storage;
 
 import dev.noah.perplayerkit.storage.exceptions.StorageConnectionException;
 import dev.noah.perplayerkit.storage.exceptions.StorageOperationException;
+import dev.noah.perplayerkit.storage.exceptions.StorageReadException;
+import dev.noah.perplayerkit.storage.exceptions.StorageWriteException;
 import dev.noah.perplayerkit.storage.sql.SQLDatabase;
 
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
 
 public class SQLStorage implements StorageManager {
 
 
+    static final int SCAN_BATCH_SIZE = 500;
     private final SQLDatabase db;
 
     public SQLStorage(SQLDatabase db) {
@@ -37,11 +47,13 @@ public class SQLStorage implements StorageManager {
 
 
     private void createTable() throws SQLException{
-        PreparedStatement ps;
-            ps = db.getConnection().prepareStatement("CREATE TABLE IF NOT EXISTS kits "
-                    + "(KITID VARCHAR(100),KITDATA TEXT(15000), PRIMARY KEY (KITID) )");
-            ps.executeUpdate();
-
+        db.write(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement("CREATE TABLE IF NOT EXISTS kits "
+                    + "(KITID VARCHAR(100),KITDATA TEXT(15000), PRIMARY KEY (KITID) )")) {
+                ps.executeUpdate();
+            }
+            return null;
+        });
     }
 
     @Override
@@ -78,11 +90,12 @@ public class SQLStorage implements StorageManager {
 
     @Override
     public void keepAlive() throws StorageConnectionException {
-        PreparedStatement ps;
-
         try {
-            ps = db.getConnection().prepareStatement("SELECT 1");
-            ps.executeQuery();
+            db.read(connection -> {
+                try (PreparedStatement ps = connection.prepareStatement("SELECT 1"); ResultSet rs = ps.executeQuery()) {
+                    return rs.next();
+                }
+            });
         } catch (SQLException e) {
             throw new StorageConnectionException("Failed to keep the connection alive", e);
         }
@@ -91,67 +104,188 @@ public class SQLStorage implements StorageManager {
 
     @Override
     public void saveKitDataByID(String kitID, String data) {
+        saveKitDataByIDs(Collections.singletonMap(kitID, data));
+    }
 
-        try {
-            PreparedStatement ps = db.getConnection().prepareStatement("REPLACE INTO kits" +
-                    " (KITID,KITDATA) VALUES (?,?)");
-            ps.setString(1, kitID);
-            ps.setString(2, data);
-            ps.executeUpdate();
+    @Override
+    public String getKitDataByID(String kitID) {
+        String data = getKitDataByIDs(Collections.singletonList(kitID)).get(kitID);
+        return data == null ? "Error" : data;
+    }
 
+    @Override
+    public boolean doesKitExistByID(String kitID) {
 
+        try {
+            return db.read(connection -> {
+                try (PreparedStatement ps = connection.prepareStatement("SELECT 1 FROM kits WHERE KITID=?")) {
+                    ps.setString(1, kitID);
+                    try (ResultSet results = ps.executeQuery()) {
+                        return results.next();
+                    }
+                }
+            });
         } catch (SQLException e) {
             e.printStackTrace();
         }
+        return false;
     }
 
     @Override
-    public String getKitDataByID(String kitID) {
-        if (doesKitExistByID(kitID)) {
-            try {
+    public void deleteKitByID(String kitID) {
+        deleteKitsByIDs(Collections.singletonList(kitID));
+    }
 
-                PreparedStatement ps = db.getConnection().prepareStatement("SELECT KITDATA FROM kits WHERE KITID=?");
-                ps.setString(1, kitID);
-                ResultSet rs = ps.executeQuery();
-                String kitdata;
+    @Override
+    public Map<String, String> getKitDataByIDs(Collection<String> kitIDs) {
+        Map<String, String> result = new HashMap<>();
+        if (kitIDs.isEmpty()) {
+            return result;
+        }
 
-                if (rs.next()) {
-                    kitdata = rs.getString(1);
-                    return kitdata;
+        try {
+            db.read(connection -> {
+                try (PreparedStatement ps = connection.prepareStatement("SELECT KITID, KITDATA FROM kits WHERE KITID IN (" + placeholders(kitIDs.size()) + ")")) {
+                    int index = 1;
+                    for (String kitID : kitIDs) {
+                        ps.setString(index++, kitID);
+                    }
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            result.put(rs.getString(1), rs.getString(2));
+                        }
+                    }
                 }
+                return null;
+            });
+        } catch (SQLException e) {
+            throw new StorageReadException("Failed to read " + kitIDs.size() + " kits", e);
+        }
+        return result;
+    }
 
-            } catch (SQLException e) {
-                e.printStackTrace();
-                return "Error";
-            }
+    @Override
+    public Map<String, byte[]> getKitBytesByIDs(Collection<String> kitIDs) {
+        Map<String, byte[]> result = new HashMap<>();
+        if (kitIDs.isEmpty()) {
+            return result;
+        }
+
+        try {
+            db.read(connection -> {
+                try (PreparedStatement ps = connection.prepareStatement("SELECT KITID, KITDATA FROM kits WHERE KITID IN (" + placeholders(kitIDs.size()) + ")")) {
+                    int index = 1;
+                    for (String kitID : kitIDs) {
+                        ps.setString(index++, kitID);
+                    }
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            // the Base64 text is read as bytes and decoded while the kit is deserialized
+                            result.put(rs.getString(1), rs.getBytes(2));
+                        }
+                    }
+                }
+                return null;
+            });
+        } catch (SQLException e) {
+            throw new StorageReadException("Failed to read " + kitIDs.size() + " kits", e);
         }
-        return "Error";
+        return result;
     }
 
     @Override
-    public boolean doesKitExistByID(String kitID) {
+    public void saveKitDataByIDs(Map<String, String> kits) {
+        if (kits.isEmpty()) {
+            return;
+        }
 
         try {
-            PreparedStatement ps = db.getConnection().prepareStatement("SELECT * FROM kits WHERE KITID=?");
-            ps.setString(1, kitID);
-            ResultSet results = ps.executeQuery();
-            return results.next();
+            db.write(connection -> {
+                try (PreparedStatement ps = connection.prepareStatement("REPLACE INTO kits (KITID,KITDATA) VALUES (?,?)")) {
+                    for (Map.Entry<String, String> entry : kits.entrySet()) {
+                        ps.setString(1, entry.getKey());
+                        ps.setString(2, entry.getValue());
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+                return null;
+            });
         } catch (SQLException e) {
-            e.printStackTrace();
+            throw new StorageWriteException("Failed to save " + kits.size() + " kits", e);
         }
-        return false;
     }
 
     @Override
-    public void deleteKitByID(String kitID) {
+    public void deleteKitsByIDs(Collection<String> kitIDs) {
+        if (kitIDs.isEmpty()) {
+            return;
+        }
 
         try {
-            PreparedStatement ps = db.getConnection().prepareStatement("DELETE FROM kits WHERE KITID=?");
-            ps.setString(1, kitID);
-            ps.executeUpdate();
+            db.write(connection -> {
+                try (PreparedStatement ps = connection.prepareStatement("DELETE FROM kits WHERE KITID IN (" + placeholders(kitIDs.size()) + ")")) {
+                    int index = 1;
+                    for (String kitID : kitIDs) {
+                        ps.setString(index++, kitID);
+                    }
+                    ps.executeUpdate();
+                }
+                return null;
+            });
         } catch (SQLException e) {
-            e.printStackTrace();
+            throw new StorageWriteException("Failed to delete " + kitIDs.size() + " kits", e);
         }
     }
 
+    @Override
+    public void forEachKit(BiConsumer<String, byte[]> consumer) {
+        String cursor = "";
+        while (cursor != null) {
+            Map<String, byte[]> rows;
+            try {
+                rows = readAfter(cursor, SCAN_BATCH_SIZE);
+            } catch (SQLException e) {
+                throw new StorageReadException("Failed to read kits after " + cursor, e);
+            }
+            cursor = null;
+            for (Map.Entry<String, byte[]> row : rows.entrySet()) {
+                cursor = row.getKey();
+                consumer.accept(row.getKey(), row.getValue());
+            }
+        }
+    }
+
+    /**
+     * Reads the next rows in id order, used to walk the table in batches.
+     *
+     * @param cursor id to start after, "" to start at the beginning
+     * @param limit  max rows to read
+     * @return rows in id order
+     */
+    Map<String, byte[]> readAfter(String cursor, int limit) throws SQLException {
+        return db.read(connection -> {
+            Map<String, byte[]> rows = new LinkedHashMap<>();
+            try (PreparedStatement ps = connection.prepareStatement("SELECT KITID, KITDATA FROM kits WHERE KITID > ? ORDER BY KITID LIMIT ?")) {
+                ps.setString(1, cursor);
+                ps.setInt(2, limit);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        rows.put(rs.getString(1), rs.getBytes(2));
+                    }
+                }
+            }
+            return rows;
+        });
+    }
+
+    @Override
+    public List<String> getPoolStats() {
+        return db.getPoolStats();
+    }
+
+    static String placeholders(int count) {
+        return String.join(",", Collections.nCopies(count, "?"));
+    }
+
 }
@@ -20,6 +20,18 @@ package dev.noah.perplayerkit.storage;
 
 import dev.noah.perplayerkit.storage.exceptions.StorageConnectionException;
 import dev.noah.perplayerkit.storage.exceptions.StorageOperationException;
+import dev.noah.perplayerkit.storage.exceptions.StorageReadException;
+import dev.noah.perplayerkit.storage.exceptions.StorageWriteException;
+import dev.noah.perplayerkit.util.Serializer;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
 
 public interface StorageManager {
 
@@ -42,5 +54,176 @@ public interface StorageManager {
 
     void deleteKitByID(String kitID);
 
+    /**
+     * Fetches several kits in one operation.
+     *
+     * @param kitIDs ids to fetch
+     * @return map of id to data, ids that do not exist are left out
+     */
+    default Map<String, String> getKitDataByIDs(Collection<String> kitIDs) {
+        Map<String, String> result = new HashMap<>();
+        for (String kitID : kitIDs) {
+            if (doesKitExistByID(kitID)) {
+                result.put(kitID, getKitDataByID(kitID));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Saves several kits in one operation.
+     *
+     * @param kits map of id to data
+     * @throws StorageWriteException if the kits could not be written
+     */
+    default void saveKitDataByIDs(Map<String, String> kits) {
+        kits.forEach(this::saveKitDataByID);
+    }
+
+    /**
+     * Deletes several kits in one operation.
+     *
+     * @param kitIDs ids to delete
+     * @throws StorageWriteException if the kits could not be deleted
+     */
+    default void deleteKitsByIDs(Collection<String> kitIDs) {
+        kitIDs.forEach(this::deleteKitByID);
+    }
+
+    /**
+     * Fetches the serialized bytes of a kit. Text based backends return their Base64 text as bytes,
+     * {@link Serializer#itemStackArrayFromBytes(byte[])} reads both forms.
+     *
+     * @param kitID id to fetch
+     * @return the data, or null if the kit does not exist
+     */
+    default byte[] getKitBytesByID(String kitID) {
+        return getKitBytesByIDs(Collections.singletonList(kitID)).get(kitID);
+    }
+
+    /**
+     * Saves the serialized bytes of a kit. Text based backends store them as Base64.
+     *
+     * @param kitID id to save
+     * @param data  serialized kit
+     */
+    default void saveKitBytesByID(String kitID, byte[] data) {
+        saveKitDataByID(kitID, Serializer.toStorageText(data));
+    }
+
+    /**
+     * Binary version of {@link #getKitDataByIDs(Collection)}.
+     *
+     * @param kitIDs ids to fetch
+     * @return map of id to data, ids that do not exist are left out
+     * @throws StorageReadException if the kits could not be read
+     */
+    default Map<String, byte[]> getKitBytesByIDs(Collection<String> kitIDs) {
+        Map<String, byte[]> result = new HashMap<>();
+        getKitDataByIDs(kitIDs).forEach((kitID, data) -> result.put(kitID, Serializer.fromStorageText(data)));
+        return result;
+    }
+
+    /**
+     * Binary version of {@link #saveKitDataByIDs(Map)}.
+     *
+     * @param kits map of id to data
+     * @throws StorageWriteException if the kits could not be written
+     */
+    default void saveKitBytesByIDs(Map<String, byte[]> kits) {
+        Map<String, String> text = new HashMap<>();
+        kits.forEach((kitID, data) -> text.put(kitID, Serializer.toStorageText(data)));
+        saveKitDataByIDs(text);
+    }
+
+    /**
+     * @return whether this backend keeps a version per player kit slot, see {@link #saveKitBytesIfVersion(Map, Map)}
+     */
+    default boolean supportsKitVersions() {
+        return false;
+    }
+
+    /**
+     * Fetches the current version of several player kits. Every write to a kit increases its version.
+     *
+     * @param kitIDs ids to fetch
+     * @return map of id to version, kits that do not exist are left out
+     */
+    default Map<String, Long> getKitVersions(Collection<String> kitIDs) {
+        return Map.of();
+    }
+
+    /**
+     * Fetches several kits together with the versions of the player kits among them.
+     * <p>
+     * The default implementation reads the versions before the kits, so a write in between makes a later
+     * compare-and-set fail instead of being hidden. Backends that can read both in one step override it.
+     *
+     * @param kitIDs   ids to fetch
+     * @param versions filled with id to version, kits that do not exist are left out
+     * @return map of id to data, ids that do not exist are left out
+     */
+    default Map<String, byte[]> getKitBytesWithVersions(Collection<String> kitIDs, Map<String, Long> versions) {
+        versions.putAll(getKitVersions(kitIDs));
+        return getKitBytesByIDs(kitIDs);
+    }
+
+    /**
+     * Saves several kits, but only those whose stored version still matches the expected one. A kit that does not
+     * exist has version 0. Kits without an expected version are saved unconditionally.
+     * <p>
+     * Backends without versions save everything and report no conflicts.
+     *
+     * @param kits     map of id to data
+     * @param expected map of id to the version the data was based on
+     * @return ids that were not saved because another server wrote them first
+     * @throws StorageWriteException if the kits could not be written, none of them should be treated as saved
+     */
+    default Set<String> saveKitBytesIfVersion(Map<String, byte[]> kits, Map<String, Long> expected) {
+        saveKitBytesByIDs(kits);
+        return Set.of();
+    }
+
+    /**
+     * Rewrites kits without changing what they hold, for example in a different format. Each kit is only replaced if
+     * its stored bytes are still the expected ones, so a save that happened since they were read is kept. Unlike a
+     * save this does not increase the kit's version.
+     * <p>
+     * The default implementation reads the kits again right before writing, backends that can check and write in
+     * one step override it.
+     *
+     * @param kits     map of id to new data
+     * @param expected map of id to the bytes the new data was made from, as returned by {@link #getKitBytesByIDs(Collection)}
+     * @return the number of kits that were replaced
+     * @throws StorageWriteException if the kits could not be written
+     */
+    default int replaceKitBytesIfUnchanged(Map<String, byte[]> kits, Map<String, byte[]> expected) {
+        Map<String, byte[]> stored = getKitBytesByIDs(kits.keySet());
+        Map<String, byte[]> unchanged = new HashMap<>();
+        kits.forEach((kitID, data) -> {
+            if (Arrays.equals(stored.get(kitID), expected.get(kitID))) {
+                unchanged.put(kitID, data);
+            }
+        });
+        saveKitBytesByIDs(unchanged);
+        return unchanged.size();
+    }
+
+    /**
+     * Walks every stored entry in batches, for admin tools. Entries that are not kits, like compression
+     * dictionaries, are included too.
+     *
+     * @param consumer called with the id and stored bytes of each entry
+     * @throws StorageReadException if the walk could not finish, the consumer may have seen part of the entries
+     */
+    void forEachKit(BiConsumer<String, byte[]> consumer);
+
+    /**
+     * @return lines describing the connection pool, for the admin command
+     */
+    default List<String> getPoolStats() {
+        return List.of();
+    }
+
 }
 
@@ -37,27 +37,44 @@ public class StorageSelector {
 
         switch (storageType) {
 
+            case "file":
+                storageManager = new LogStorage(plugin, new File(plugin.getDataFolder(), "kitlog"), new File(plugin.getDataFolder(), "please-use-a-real-database.yml"));
+                break;
             case "yml":
             case "yaml":
                 storageManager = new YAMLStorage(plugin,plugin.getDataFolder() + File.separator + "please-use-a-real-database.yml");
                 break;
             case "redis":
-                storageManager = new RedisStorage(plugin);
+                if (plugin.getConfig().getString("redis.layout", "hash").equalsIgnoreCase("flat")) {
+                    plugin.getLogger().info("Using flat Redis layout");
+                    storageManager = new RedisStorage(plugin);
+                } else {
+                    storageManager = new RedisHashStorage(plugin);
+                }
                 break;
             case "mysql":
                 SQLDatabase db = new MySQL(plugin);
-                storageManager = new SQLStorage(db);
+                storageManager = createSQLStorage(db);
                 break;
             case "sqlite":
             default:
                 //default to sqlite
-                db = new SQLite(plugin.getDataFolder() + File.separator + "database.db");
-                storageManager = new SQLStorage(db);
+                db = new SQLite(plugin, plugin.getDataFolder() + File.separator + "database.db");
+                storageManager = createSQLStorage(db);
                 break;
         }
 
     }
 
+    private StorageManager createSQLStorage(SQLDatabase db) {
+        int schema = plugin.getConfig().getInt("storage.sql-schema", 2);
+        if (schema == 1) {
+            plugin.getLogger().info("Using legacy SQL schema (version 1)");
+            return new SQLStorage(db);
+        }
+        return new NormalizedSQLStorage(plugin, db);
+    }
+
     public StorageManager getDbManager() {
         return storageManager;
     }
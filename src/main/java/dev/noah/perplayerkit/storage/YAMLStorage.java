@@ -19,6 +19,8 @@
 package dev.noah.perplayerkit.storage;
 
 import dev.noah.perplayerkit.PerPlayerKit;
+import dev.noah.perplayerkit.storage.exceptions.StorageWriteException;
+import dev.noah.perplayerkit.util.Serializer;
 import org.bukkit.plugin.Plugin;
 import org.yaml.snakeyaml.DumperOptions;
 import org.yaml.snakeyaml.Yaml;
@@ -27,8 +29,10 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.BiConsumer;
 
 public class YAMLStorage implements StorageManager {
 
@@ -117,6 +121,49 @@ public class YAMLStorage implements StorageManager {
         }
     }
 
+    @Override
+    public Map<String, String> getKitDataByIDs(Collection<String> kitIDs) {
+        Map<String, String> result = new HashMap<>();
+        for (String kitID : kitIDs) {
+            String value = data.get(kitID);
+            if (value != null) {
+                result.put(kitID, value);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void saveKitDataByIDs(Map<String, String> kits) {
+        if (kits.isEmpty()) {
+            return;
+        }
+        data.putAll(kits);
+        try {
+            saveToFile();
+        } catch (IOException e) {
+            throw new StorageWriteException("Failed to save " + kits.size() + " kits", e);
+        }
+    }
+
+    @Override
+    public void deleteKitsByIDs(Collection<String> kitIDs) {
+        if (kitIDs.isEmpty()) {
+            return;
+        }
+        data.keySet().removeAll(kitIDs);
+        try {
+            saveToFile();
+        } catch (IOException e) {
+            throw new StorageWriteException("Failed to delete " + kitIDs.size() + " kits", e);
+        }
+    }
+
+    @Override
+    public void forEachKit(BiConsumer<String, byte[]> consumer) {
+        new HashMap<>(data).forEach((kitID, value) -> consumer.accept(kitID, Serializer.fromStorageText(value)));
+    }
+
     private void saveToFile() throws IOException {
         DumperOptions options = new DumperOptions();
         options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2022-2025 Noah Ross
+ *
+ * This file is part of PerPlayerKit.
+ *
+ * PerPlayerKit is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * PerPlayerKit is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with PerPlayerKit. If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.noah.perplayerkit.storage.exceptions;
+
+/**
+ * Thrown by the bulk write methods of a storage backend when the write did not go through, so the caller can keep
+ * the kits and try again. Unchecked because the storage interface predates it.
+ */
+public class StorageWriteException extends RuntimeException {
+    public StorageWriteException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
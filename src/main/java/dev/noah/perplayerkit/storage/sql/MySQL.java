@@ -20,12 +20,14 @@ package dev.noah.perplayerkit.storage.sql;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
-import dev.noah.perplayerkit.PerPlayerKit;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.plugin.Plugin;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class MySQL implements SQLDatabase {
 
@@ -38,6 +40,10 @@ public class MySQL implements SQLDatabase {
     private final String password;
     private boolean useSSL = false;
 
+    private final AtomicLong acquires = new AtomicLong();
+    private final AtomicLong acquireNanos = new AtomicLong();
+    private final AtomicLong maxAcquireNanos = new AtomicLong();
+
     public MySQL(Plugin plugin) {
         this.plugin = plugin;
         host = plugin.getConfig().getString("mysql.host");
@@ -57,11 +63,26 @@ public class MySQL implements SQLDatabase {
 
     public void connect() {
         if (!isConnected()) {
+            FileConfiguration cfg = plugin.getConfig();
             HikariConfig config = new HikariConfig();
+            config.setPoolName("PerPlayerKit-MySQL");
             config.setJdbcUrl("jdbc:mysql://" + host + ":" + port + "/" + database + "?useSSL=" + useSSL);
             config.setUsername(username);
             config.setPassword(password);
 
+            config.setMaximumPoolSize(cfg.getInt("mysql.pool-size", 10));
+            config.setMinimumIdle(cfg.getInt("mysql.minimum-idle", cfg.getInt("mysql.pool-size", 10)));
+            config.setConnectionTimeout(cfg.getLong("mysql.connection-timeout", 30000));
+            config.setIdleTimeout(cfg.getLong("mysql.idle-timeout", 600000));
+            config.setMaxLifetime(cfg.getLong("mysql.max-lifetime", 1800000));
+
+            // statement caching and batching are done by the driver
+            config.addDataSourceProperty("cachePrepStmts", cfg.getBoolean("mysql.cache-prep-stmts", true));
+            config.addDataSourceProperty("prepStmtCacheSize", cfg.getInt("mysql.prep-stmt-cache-size", 250));
+            config.addDataSourceProperty("prepStmtCacheSqlLimit", cfg.getInt("mysql.prep-stmt-cache-sql-limit", 2048));
+            config.addDataSourceProperty("useServerPrepStmts", cfg.getBoolean("mysql.use-server-prep-stmts", true));
+            config.addDataSourceProperty("rewriteBatchedStatements", cfg.getBoolean("mysql.rewrite-batched-statements", true));
+
             dataSource = new HikariDataSource(config);
         }
     }
@@ -72,11 +93,60 @@ public class MySQL implements SQLDatabase {
         }
     }
 
+    /**
+     * Borrows a connection from the pool. Callers must close it to return it, prefer {@link #read(SQLWork)} and
+     * {@link #write(SQLWork)} which do that.
+     */
     public Connection getConnection() throws SQLException {
         if (!isConnected()) {
             connect();
         }
-        return dataSource.getConnection();
+        long start = System.nanoTime();
+        Connection connection = dataSource.getConnection();
+        long elapsed = System.nanoTime() - start;
+        acquires.incrementAndGet();
+        acquireNanos.addAndGet(elapsed);
+        maxAcquireNanos.accumulateAndGet(elapsed, Math::max);
+        return connection;
+    }
+
+    @Override
+    public <T> T read(SQLWork<T> work) throws SQLException {
+        try (Connection connection = getConnection()) {
+            return work.run(connection);
+        }
+    }
+
+    @Override
+    public <T> T write(SQLWork<T> work) throws SQLException {
+        try (Connection connection = getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                T result = work.run(connection);
+                connection.commit();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    @Override
+    public List<String> getPoolStats() {
+        if (!isConnected()) {
+            return List.of("MySQL pool is not connected");
+        }
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        long count = acquires.get();
+        return List.of(
+                "Connections: " + pool.getActiveConnections() + " active, " + pool.getIdleConnections() + " idle, "
+                        + pool.getTotalConnections() + "/" + dataSource.getMaximumPoolSize() + " total",
+                "Threads waiting: " + pool.getThreadsAwaitingConnection(),
+                String.format("Acquire time: avg %.2f ms, max %.2f ms over %d acquires",
+                        count == 0 ? 0 : acquireNanos.get() / 1e6 / count, maxAcquireNanos.get() / 1e6, count));
     }
 
 }
@@ -20,6 +20,7 @@ package dev.noah.perplayerkit.storage.sql;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.List;
 
 public interface SQLDatabase {
 
@@ -31,4 +32,43 @@ public interface SQLDatabase {
 
     Connection getConnection() throws SQLException;
 
+    /**
+     * @return the insert keyword that skips rows whose primary key already exists
+     */
+    default String insertIgnore() {
+        return "INSERT IGNORE";
+    }
+
+    /**
+     * Runs work that only reads. Implementations may run it on a separate read connection.
+     *
+     * @param work the work to run
+     * @return the result of the work
+     */
+    default <T> T read(SQLWork<T> work) throws SQLException {
+        return work.run(getConnection());
+    }
+
+    /**
+     * Runs work that modifies the database. Implementations may serialize writes or run the work as one transaction.
+     *
+     * @param work the work to run
+     * @return the result of the work
+     */
+    default <T> T write(SQLWork<T> work) throws SQLException {
+        return work.run(getConnection());
+    }
+
+    /**
+     * @return lines describing the connection pool, for the admin command
+     */
+    default List<String> getPoolStats() {
+        return List.of();
+    }
+
+    @FunctionalInterface
+    interface SQLWork<T> {
+        T run(Connection connection) throws SQLException;
+    }
+
 }
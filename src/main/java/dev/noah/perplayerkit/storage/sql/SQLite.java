@@ -18,18 +18,45 @@
  */
 package dev.noah.perplayerkit.storage.sql;
 
+import org.bukkit.plugin.Plugin;
+
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
 
+/**
+ * SQLite database. In performance mode the database runs in WAL mode, all writes go through one writer thread
+ * and its own connection, and reads use a small pool of read only connections so they never wait on a write.
+ */
 public class SQLite implements SQLDatabase {
 
 
     private final String databasePath;
+    private final boolean performanceMode;
+    private final boolean wal;
+    private final String synchronous;
+    private final long mmapSize;
+    private final int cacheSize;
+    private final int readConnections;
     private Connection connection;
+    private ExecutorService writer;
+    private volatile Thread writerThread;
+    private BlockingQueue<Connection> readers;
+    private final List<Connection> allReaders = new ArrayList<>();
 
-    public SQLite(String databasePath) {
+    public SQLite(Plugin plugin, String databasePath) {
         this.databasePath = databasePath;
+        performanceMode = plugin.getConfig().getBoolean("sqlite.performance-mode", true);
+        wal = plugin.getConfig().getBoolean("sqlite.wal", true);
+        String mode = plugin.getConfig().getString("sqlite.synchronous", "NORMAL").toUpperCase();
+        synchronous = List.of("OFF", "NORMAL", "FULL", "EXTRA").contains(mode) ? mode : "NORMAL";
+        mmapSize = plugin.getConfig().getLong("sqlite.mmap-size", 268435456L);
+        cacheSize = plugin.getConfig().getInt("sqlite.cache-size", -16000);
+        readConnections = Math.max(1, plugin.getConfig().getInt("sqlite.read-connections", 4));
     }
 
     public boolean isConnected() {
@@ -40,20 +67,153 @@ public class SQLite implements SQLDatabase {
         if (!isConnected()) {
             Class.forName("org.sqlite.JDBC");
             connection = DriverManager.getConnection("jdbc:sqlite:" + databasePath);
+
+            if (performanceMode) {
+                try (Statement statement = connection.createStatement()) {
+                    if (wal) {
+                        statement.execute("PRAGMA journal_mode=WAL");
+                    }
+                }
+                applyPragmas(connection);
+
+                readers = new ArrayBlockingQueue<>(readConnections);
+                for (int i = 0; i < readConnections; i++) {
+                    Connection reader = DriverManager.getConnection("jdbc:sqlite:" + databasePath);
+                    applyPragmas(reader);
+                    try (Statement statement = reader.createStatement()) {
+                        statement.execute("PRAGMA query_only=ON");
+                    }
+                    allReaders.add(reader);
+                    readers.add(reader);
+                }
+
+                writer = Executors.newSingleThreadExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "PerPlayerKit SQLite Writer");
+                    thread.setDaemon(true);
+                    writerThread = thread;
+                    return thread;
+                });
+            }
+        }
+    }
+
+    private void applyPragmas(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA synchronous=" + synchronous);
+            statement.execute("PRAGMA mmap_size=" + mmapSize);
+            statement.execute("PRAGMA cache_size=" + cacheSize);
+            statement.execute("PRAGMA busy_timeout=5000");
         }
     }
 
     public void disconnect() {
         if (isConnected()) {
+            if (writer != null) {
+                writer.shutdown();
+                try {
+                    writer.awaitTermination(30, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                writer = null;
+            }
+            for (Connection reader : allReaders) {
+                try {
+                    reader.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+            allReaders.clear();
+            readers = null;
             try {
                 connection.close();
             } catch (SQLException e) {
                 e.printStackTrace();
             }
+            connection = null;
         }
     }
 
     public Connection getConnection() {
         return connection;
     }
+
+    @Override
+    public <T> T read(SQLWork<T> work) throws SQLException {
+        BlockingQueue<Connection> pool = readers;
+        if (pool == null) {
+            return work.run(connection);
+        }
+
+        Connection reader;
+        try {
+            reader = pool.poll(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a read connection", e);
+        }
+        if (reader == null) {
+            throw new SQLException("Timed out waiting for a read connection");
+        }
+        try {
+            return work.run(reader);
+        } finally {
+            pool.add(reader);
+        }
+    }
+
+    @Override
+    public <T> T write(SQLWork<T> work) throws SQLException {
+        ExecutorService executor = writer;
+        if (executor == null || Thread.currentThread() == writerThread) {
+            return work.run(connection);
+        }
+
+        Future<T> result;
+        try {
+            result = executor.submit(() -> runInTransaction(work));
+        } catch (RejectedExecutionException e) {
+            throw new SQLException("SQLite writer is shut down", e);
+        }
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a write", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException sqlException) {
+                throw sqlException;
+            }
+            throw new SQLException("SQLite write failed", e.getCause());
+        }
+    }
+
+    private <T> T runInTransaction(SQLWork<T> work) throws SQLException {
+        connection.setAutoCommit(false);
+        try {
+            T result = work.run(connection);
+            connection.commit();
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    @Override
+    public List<String> getPoolStats() {
+        BlockingQueue<Connection> pool = readers;
+        if (pool == null) {
+            return List.of("SQLite is using a single shared connection");
+        }
+        return List.of("Read connections: " + (readConnections - pool.size()) + " in use, " + pool.size() + " idle");
+    }
+
+    @Override
+    public String insertIgnore() {
+        return "INSERT OR IGNORE";
+    }
 }
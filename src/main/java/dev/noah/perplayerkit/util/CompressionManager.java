@@ -0,0 +1,347 @@
+/*
+ * Copyright 2022-2025 Noah Ross
+ *
+ * This file is part of PerPlayerKit.
+ *
+ * PerPlayerKit is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * PerPlayerKit is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with PerPlayerKit. If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.noah.perplayerkit.util;
+
+import dev.noah.perplayerkit.PerPlayerKit;
+import dev.noah.perplayerkit.storage.exceptions.StorageReadException;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.plugin.Plugin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses serialized kits with deflate, using a preset dictionary built from the kit room.
+ * <p>
+ * Compressed data is stored as a {@link #FORMAT_DEFLATE} byte followed by a zlib stream. The zlib header carries the
+ * id of the dictionary it was written with, so kits saved before the kit room changed keep decoding as long as
+ * their dictionary is still stored.
+ */
+public class CompressionManager {
+
+    public static final byte FORMAT_DEFLATE = 0x01;
+    // stored dictionaries get a leading byte so they can never be mistaken for Base64 text
+    private static final byte FORMAT_DICTIONARY = 0x00;
+    // deflate can only look back 32 KiB, anything more in the dictionary is never used
+    private static final int MAX_DICTIONARY_SIZE = 32 * 1024;
+    private static CompressionManager instance;
+
+    private final Plugin plugin;
+    private final boolean enabled;
+    private final int level;
+    private final Map<Integer, byte[]> dictionaries = new ConcurrentHashMap<>();
+    private final ThreadLocal<Deflater> deflaters;
+    private final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(Inflater::new);
+    private final ThreadLocal<byte[]> scratch = ThreadLocal.withInitial(() -> new byte[16 * 1024]);
+    private volatile byte[] dictionary;
+
+    public CompressionManager(Plugin plugin) {
+        this.plugin = plugin;
+        this.enabled = plugin.getConfig().getBoolean("storage.compression", true);
+        this.level = Math.max(1, Math.min(9, plugin.getConfig().getInt("storage.compression-level", 6)));
+        this.deflaters = ThreadLocal.withInitial(() -> new Deflater(level));
+        instance = this;
+    }
+
+    public static CompressionManager get() {
+        if (instance == null) {
+            throw new IllegalStateException("CompressionManager has not been initialized yet!");
+        }
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param data stored kit data.
+     * @return true if the data is in the compressed format.
+     */
+    public static boolean isCompressed(byte[] data) {
+        return data.length > 0 && data[0] == FORMAT_DEFLATE;
+    }
+
+    /**
+     * Builds a dictionary from the kit room pages and makes it the one new kits are compressed with. The dictionary
+     * is stored before it is used, so this should be called off the main thread once storage is connected.
+     *
+     * @param pages kit room pages.
+     */
+    public void updateDictionary(List<ItemStack[]> pages) {
+        if (!enabled) {
+            return;
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        // pages are written last to first so the first pages end up closest to the data being compressed
+        for (int i = pages.size() - 1; i >= 0; i--) {
+            output.writeBytes(Serializer.itemStackArrayToRawBytes(pages.get(i)));
+        }
+        byte[] built = output.toByteArray();
+        if (built.length > MAX_DICTIONARY_SIZE) {
+            built = Arrays.copyOfRange(built, built.length - MAX_DICTIONARY_SIZE, built.length);
+        }
+
+        int id = dictionaryId(built);
+        if (!dictionaries.containsKey(id)) {
+            byte[] stored = new byte[built.length + 1];
+            stored[0] = FORMAT_DICTIONARY;
+            System.arraycopy(built, 0, stored, 1, built.length);
+            PerPlayerKit.storageManager.saveKitBytesByID(IDUtil.getDictionaryId(id), stored);
+            dictionaries.put(id, built);
+        }
+        dictionary = built;
+    }
+
+    /**
+     * Compresses serialized kit data. Data is returned unchanged if compression is disabled or does not make it
+     * smaller.
+     *
+     * @param raw serialized kit data.
+     * @return compressed data, or the input.
+     */
+    public byte[] compress(byte[] raw) {
+        return enabled ? compress(raw, raw.length) : raw;
+    }
+
+    /**
+     * Compresses the first {@code length} bytes of a buffer. Always returns a new array, so the buffer can be reused
+     * by the caller.
+     *
+     * @param raw    buffer holding serialized kit data.
+     * @param length number of bytes used in the buffer.
+     * @return compressed data, or a copy of the input.
+     */
+    public byte[] compress(byte[] raw, int length) {
+        if (!enabled) {
+            return Arrays.copyOf(raw, length);
+        }
+
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        byte[] dict = dictionary;
+        if (dict != null) {
+            deflater.setDictionary(dict);
+        }
+        deflater.setInput(raw, 0, length);
+        deflater.finish();
+
+        // anything that does not fit in length bytes is not worth keeping, so the output never needs to grow
+        byte[] output = scratch.get();
+        if (output.length < length) {
+            output = new byte[length];
+            scratch.set(output);
+        }
+        output[0] = FORMAT_DEFLATE;
+        int size = 1;
+        while (!deflater.finished()) {
+            if (size >= length) {
+                return Arrays.copyOf(raw, length);
+            }
+            size += deflater.deflate(output, size, length - size);
+        }
+        return size >= length ? Arrays.copyOf(raw, length) : Arrays.copyOf(output, size);
+    }
+
+    /**
+     * Decompresses data written by {@link #compress(byte[])}, loading the dictionary from storage if it is not
+     * cached yet.
+     *
+     * @param data compressed data.
+     * @return serialized kit data.
+     * @throws IOException if the data is corrupt or its dictionary is missing.
+     */
+    public byte[] decompress(byte[] data) throws IOException {
+        if (!isCompressed(data)) {
+            throw new IOException("Data is not compressed.");
+        }
+
+        Inflater inflater = borrowInflater();
+        inflater.setInput(data, 1, data.length - 1);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream(data.length * 4);
+        byte[] buffer = new byte[8192];
+        try {
+            while (!inflater.finished()) {
+                int read = inflater.inflate(buffer);
+                if (read > 0) {
+                    output.write(buffer, 0, read);
+                } else if (inflater.needsDictionary()) {
+                    byte[] dict = getDictionary(inflater.getAdler());
+                    if (dict == null) {
+                        throw new IOException("Missing compression dictionary " + Integer.toHexString(inflater.getAdler()));
+                    }
+                    inflater.setDictionary(dict);
+                } else if (inflater.needsInput()) {
+                    throw new IOException("Compressed kit data is truncated.");
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid compressed kit data.", e);
+        } finally {
+            releaseInflater(inflater);
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Wraps a stream of compressed data, positioned after the {@link #FORMAT_DEFLATE} byte, so it can be decoded
+     * without first inflating it into an array. The stream uses this thread's inflater until it is read to the end
+     * or closed.
+     *
+     * @param in compressed data without the format byte.
+     * @return stream of serialized kit data.
+     */
+    public InputStream inflate(InputStream in) {
+        return new InflatingStream(in, borrowInflater());
+    }
+
+    // decoding a kit can load a template set, which inflates while the kit's own stream is still open
+    private Inflater borrowInflater() {
+        Inflater inflater = inflaters.get();
+        if (inflater == null) {
+            return new Inflater();
+        }
+        inflaters.set(null);
+        inflater.reset();
+        return inflater;
+    }
+
+    private void releaseInflater(Inflater inflater) {
+        if (inflaters.get() == null) {
+            inflaters.set(inflater);
+        } else {
+            inflater.end();
+        }
+    }
+
+    private byte[] getDictionary(int id) throws IOException {
+        byte[] dict = dictionaries.get(id);
+        if (dict != null) {
+            return dict;
+        }
+
+        byte[] stored;
+        try {
+            stored = PerPlayerKit.storageManager.getKitBytesByID(IDUtil.getDictionaryId(id));
+        } catch (StorageReadException e) {
+            throw new IOException("Failed to read compression dictionary " + Integer.toHexString(id), e);
+        }
+        if (stored == null) {
+            return null;
+        }
+        try {
+            stored = Serializer.fromStoredBytes(stored);
+        } catch (IllegalArgumentException e) {
+            stored = new byte[0];
+        }
+        dict = stored.length > 0 && stored[0] == FORMAT_DICTIONARY ? Arrays.copyOfRange(stored, 1, stored.length) : stored;
+        if (dictionaryId(dict) != id) {
+            plugin.getLogger().warning("Stored compression dictionary " + Integer.toHexString(id) + " is corrupt");
+            return null;
+        }
+        dictionaries.put(id, dict);
+        return dict;
+    }
+
+    // zlib identifies preset dictionaries by their Adler-32 checksum
+    private static int dictionaryId(byte[] dict) {
+        Adler32 adler = new Adler32();
+        adler.update(dict);
+        return (int) adler.getValue();
+    }
+
+    private final class InflatingStream extends InputStream {
+
+        private final InputStream in;
+        private Inflater inflater;
+        private final byte[] input = new byte[4096];
+        private final byte[] single = new byte[1];
+
+        private InflatingStream(InputStream in, Inflater inflater) {
+            this.in = in;
+            this.inflater = inflater;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (inflater == null) {
+                return -1;
+            }
+            try {
+                while (true) {
+                    if (inflater.finished()) {
+                        release();
+                        return -1;
+                    }
+                    int read = inflater.inflate(b, off, len);
+                    if (read > 0) {
+                        return read;
+                    }
+                    if (inflater.needsDictionary()) {
+                        byte[] dict = getDictionary(inflater.getAdler());
+                        if (dict == null) {
+                            throw new IOException("Missing compression dictionary " + Integer.toHexString(inflater.getAdler()));
+                        }
+                        inflater.setDictionary(dict);
+                    } else if (inflater.needsInput()) {
+                        int filled = in.read(input);
+                        if (filled == -1) {
+                            throw new IOException("Compressed kit data is truncated.");
+                        }
+                        inflater.setInput(input, 0, filled);
+                    }
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Invalid compressed kit data.", e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            release();
+            in.close();
+        }
+
+        private void release() {
+            if (inflater != null) {
+                releaseInflater(inflater);
+                inflater = null;
+            }
+        }
+    }
+}
@@ -39,5 +39,17 @@ public class IDUtil {
         return "kitroom" + slot;
     }
 
+    public static String getDictionaryId(int dictionaryId) {
+        return "dictionary" + Integer.toHexString(dictionaryId);
+    }
+
+    public static String getTemplateSetId(int setId) {
+        return "templates" + Integer.toHexString(setId);
+    }
+
+    public static String getMarkerId(String name) {
+        return "marker" + name;
+    }
+
 
 }
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2022-2025 Noah Ross
+ *
+ * This file is part of PerPlayerKit.
+ *
+ * PerPlayerKit is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * PerPlayerKit is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with PerPlayerKit. If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.noah.perplayerkit.util;
+
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.plugin.Plugin;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Shares one ItemStack instance between all loaded kits that contain an equal item. Most kits are built from the
+ * kit room, so the same armor, totems and potions show up in almost every kit.
+ * <p>
+ * Interned items must never be modified. Kits are only ever copied into real inventories through
+ * {@code setContents}/{@code setItem}, which copy each item, so a player changing an item never touches the
+ * shared instance. Code that needs to change an item from a kit has to clone it first.
+ */
+public class ItemInterner {
+
+    // rough heap use of a live ItemStack, with and without item meta
+    private static final long ITEM_SIZE = 256;
+    private static final long ITEM_META_SIZE = 1024;
+
+    private static ItemInterner instance;
+    private final boolean enabled;
+    private final int maxItems;
+    private final Map<ItemStack, Entry> items = new ConcurrentHashMap<>();
+
+    public ItemInterner(Plugin plugin) {
+        this.enabled = plugin.getConfig().getBoolean("storage.intern-items", true);
+        this.maxItems = Math.max(0, plugin.getConfig().getInt("storage.intern-max-items", 10000));
+        instance = this;
+    }
+
+    public static ItemInterner get() {
+        if (instance == null) {
+            throw new IllegalStateException("ItemInterner has not been initialized yet!");
+        }
+        return instance;
+    }
+
+    /**
+     * Replaces every item in the array with its shared instance, in place.
+     *
+     * @param kit the kit to intern
+     * @return the same array
+     */
+    public ItemStack[] intern(ItemStack[] kit) {
+        if (!enabled || kit == null) {
+            return kit;
+        }
+        for (int i = 0; i < kit.length; i++) {
+            kit[i] = intern(kit[i]);
+        }
+        return kit;
+    }
+
+    public ItemStack intern(ItemStack item) {
+        if (!enabled || item == null || item.getType().isAir()) {
+            return item;
+        }
+        Entry entry = items.get(item);
+        if (entry == null) {
+            if (items.size() >= maxItems) {
+                return item;
+            }
+            // keep a copy, the given item may still be backed by an inventory
+            entry = items.computeIfAbsent(item.clone(), Entry::new);
+        }
+        entry.uses.increment();
+        return entry.item;
+    }
+
+    public void clear() {
+        items.clear();
+    }
+
+    public List<String> getStats(int limit) {
+        List<Entry> entries = new ArrayList<>(items.values());
+        entries.sort(Comparator.comparingLong(Entry::getSaved).reversed());
+
+        long saved = 0;
+        for (Entry entry : entries) {
+            saved += entry.getSaved();
+        }
+
+        List<String> stats = new ArrayList<>();
+        stats.add("Interned items: " + entries.size() + "/" + maxItems + String.format(", ~%.1f KiB saved", saved / 1024.0));
+        for (Entry entry : entries.subList(0, Math.min(limit, entries.size()))) {
+            stats.add(String.format("%s x%d: %d uses, ~%.1f KiB saved", entry.item.getType(), entry.item.getAmount(),
+                    entry.uses.sum(), entry.getSaved() / 1024.0));
+        }
+        return stats;
+    }
+
+    /**
+     * @return rough heap use of a live ItemStack
+     */
+    public static long estimateSize(ItemStack item) {
+        return item.hasItemMeta() ? ITEM_META_SIZE : ITEM_SIZE;
+    }
+
+    private static final class Entry {
+        final ItemStack item;
+        final long size;
+        final LongAdder uses = new LongAdder();
+
+        Entry(ItemStack item) {
+            this.item = item;
+            this.size = estimateSize(item);
+        }
+
+        //every use after the first would otherwise have been its own copy
+        long getSaved() {
+            return Math.max(0, uses.sum() - 1) * size;
+        }
+    }
+}
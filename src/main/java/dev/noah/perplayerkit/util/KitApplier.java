@@ -0,0 +1,118 @@
+/*
+ * Copyright 2022-2025 Noah Ross
+ *
+ * This file is part of PerPlayerKit.
+ *
+ * PerPlayerKit is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * PerPlayerKit is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with PerPlayerKit. If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.noah.perplayerkit.util;
+
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.plugin.Plugin;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Copies a kit into an inventory. Instead of rewriting every slot, the current contents are compared with the kit
+ * and only the slots that differ are set, so a player who respawns into the kit they already had only gets the few
+ * slots they used up resent. When more than {@code feature.diff-kit-apply-max-changed} of the slots differ the whole
+ * inventory is set at once instead.
+ */
+public class KitApplier {
+
+    private static KitApplier instance;
+    private final boolean diffEnabled;
+    private final double maxChanged;
+
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder fullWrites = new LongAdder();
+    private final LongAdder slotsWritten = new LongAdder();
+    private final LongAdder slotsSkipped = new LongAdder();
+
+    public KitApplier(Plugin plugin) {
+        this.diffEnabled = plugin.getConfig().getBoolean("feature.diff-kit-apply", true);
+        this.maxChanged = plugin.getConfig().getDouble("feature.diff-kit-apply-max-changed", 0.5);
+        instance = this;
+    }
+
+    public static KitApplier get() {
+        if (instance == null) {
+            throw new IllegalStateException("KitApplier has not been initialized yet!");
+        }
+        return instance;
+    }
+
+    /**
+     * Makes the inventory hold the kit. Slots past the end of the kit are cleared.
+     *
+     * @param inventory inventory to fill
+     * @param kit       the items, copied into the inventory
+     */
+    public void apply(Inventory inventory, ItemStack[] kit) {
+        loads.increment();
+        if (!diffEnabled) {
+            setAll(inventory, kit);
+            return;
+        }
+
+        ItemStack[] current = inventory.getContents();
+        int[] changed = new int[current.length];
+        int count = 0;
+        for (int i = 0; i < current.length; i++) {
+            if (!isSame(current[i], i < kit.length ? kit[i] : null)) {
+                changed[count++] = i;
+            }
+        }
+
+        if (count > current.length * maxChanged) {
+            setAll(inventory, kit);
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            int slot = changed[i];
+            inventory.setItem(slot, slot < kit.length ? kit[slot] : null);
+        }
+        slotsWritten.add(count);
+        slotsSkipped.add(current.length - count);
+    }
+
+    public List<String> getStats() {
+        long written = slotsWritten.sum();
+        long skipped = slotsSkipped.sum();
+        return List.of(
+                "Diff kit apply is " + (diffEnabled ? "enabled" : "disabled") + ", full rewrite above " + Math.round(maxChanged * 100) + "% changed slots",
+                "Kit loads: " + loads.sum() + " (" + fullWrites.sum() + " full rewrites)",
+                String.format("Slots written: %d, skipped: %d (%.1f%% skipped)", written, skipped,
+                        written + skipped == 0 ? 0 : skipped * 100.0 / (written + skipped)));
+    }
+
+    private void setAll(Inventory inventory, ItemStack[] kit) {
+        inventory.setContents(kit);
+        fullWrites.increment();
+        slotsWritten.add(inventory.getSize());
+    }
+
+    private static boolean isSame(ItemStack current, ItemStack target) {
+        if (isEmpty(current) || isEmpty(target)) {
+            return isEmpty(current) && isEmpty(target);
+        }
+        return current.equals(target);
+    }
+
+    private static boolean isEmpty(ItemStack item) {
+        return item == null || item.getType().isAir();
+    }
+}
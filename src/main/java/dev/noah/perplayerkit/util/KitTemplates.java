@@ -0,0 +1,253 @@
+/*
+ * Copyright 2022-2025 Noah Ross
+ *
+ * This file is part of PerPlayerKit.
+ *
+ * PerPlayerKit is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * PerPlayerKit is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with PerPlayerKit. If not, see <https://www.gnu.org/licenses/>.
+ */
+package dev.noah.perplayerkit.util;
+
+import dev.noah.perplayerkit.PerPlayerKit;
+import dev.noah.perplayerkit.storage.exceptions.StorageReadException;
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.plugin.Plugin;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Lets kits store items copied from the kit room as references instead of full item data.
+ * <p>
+ * Every distinct kit room item is put in a template set, which is stored under an id taken from its content. A kit
+ * refers to the set it was written with, so editing the kit room starts a new set and older kits keep decoding
+ * from theirs, as long as it is still stored.
+ */
+public class KitTemplates {
+
+    private static KitTemplates instance;
+
+    private final Plugin plugin;
+    private final boolean enabled;
+    private final Map<Integer, TemplateSet> sets = new ConcurrentHashMap<>();
+    private volatile TemplateSet current;
+
+    public KitTemplates(Plugin plugin) {
+        this.plugin = plugin;
+        this.enabled = plugin.getConfig().getBoolean("storage.kit-templates", true);
+        instance = this;
+    }
+
+    public static KitTemplates get() {
+        if (instance == null) {
+            throw new IllegalStateException("KitTemplates has not been initialized yet!");
+        }
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return the set new kits are written with, or null if kits are written without references.
+     */
+    public TemplateSet current() {
+        return current;
+    }
+
+    /**
+     * Builds a template set from the kit room pages and makes it the one new kits refer to. The set is stored before
+     * it is used, so this should be called off the main thread once storage is connected.
+     *
+     * @param pages kit room pages.
+     */
+    public void update(List<ItemStack[]> pages) {
+        if (!enabled) {
+            return;
+        }
+
+        List<ItemStack> templates = new ArrayList<>();
+        for (ItemStack[] page : pages) {
+            for (ItemStack item : page) {
+                if (item == null || item.getType().isAir() || templates.size() >= Short.MAX_VALUE) {
+                    continue;
+                }
+                ItemStack template = item.clone();
+                template.setAmount(1);
+                if (templates.stream().noneMatch(template::isSimilar)) {
+                    templates.add(template);
+                }
+            }
+        }
+        if (templates.isEmpty()) {
+            current = null;
+            return;
+        }
+
+        ItemStack[] items = templates.toArray(new ItemStack[0]);
+        byte[] raw = Serializer.itemStackArrayToRawBytes(items);
+        int id = setId(raw);
+        TemplateSet set = sets.get(id);
+        if (set == null) {
+            PerPlayerKit.storageManager.saveKitBytesByID(IDUtil.getTemplateSetId(id), CompressionManager.get().compress(raw));
+            set = new TemplateSet(id, items);
+            sets.put(id, set);
+        }
+        current = set;
+    }
+
+    /**
+     * Gets a template set, loading it from storage if it is not cached yet.
+     *
+     * @param id set id a kit was written with.
+     * @return the set.
+     * @throws IOException if the set is missing or corrupt.
+     */
+    public TemplateSet getSet(int id) throws IOException {
+        TemplateSet set = sets.get(id);
+        if (set != null) {
+            return set;
+        }
+
+        try {
+            return loadSet(id, PerPlayerKit.storageManager.getKitBytesByID(IDUtil.getTemplateSetId(id)));
+        } catch (StorageReadException e) {
+            throw new IOException("Failed to read kit template set " + Integer.toHexString(id), e);
+        }
+    }
+
+    /**
+     * Loads template sets that are not cached yet with one storage read. Call this off the main thread for kits that
+     * are decoded later, so decoding them never waits for storage. Sets that are missing or corrupt are skipped, the
+     * kits using them fail to decode as they would without this. If the read fails they are loaded when first used.
+     *
+     * @param ids set ids, see {@link Serializer#templateSetIdOf(byte[])}.
+     */
+    public void preloadSets(Collection<Integer> ids) {
+        Map<String, Integer> missing = new HashMap<>();
+        for (int id : ids) {
+            if (!sets.containsKey(id)) {
+                missing.put(IDUtil.getTemplateSetId(id), id);
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+        Map<String, byte[]> stored;
+        try {
+            stored = PerPlayerKit.storageManager.getKitBytesByIDs(missing.keySet());
+        } catch (StorageReadException e) {
+            return;
+        }
+        missing.forEach((kitID, id) -> {
+            try {
+                loadSet(id, stored.get(kitID));
+            } catch (IOException ignored) {
+            }
+        });
+    }
+
+    private TemplateSet loadSet(int id, byte[] stored) throws IOException {
+        if (stored == null) {
+            throw new IOException("Missing kit template set " + Integer.toHexString(id));
+        }
+        byte[] raw = Serializer.toRawBytes(stored);
+        if (setId(raw) != id) {
+            plugin.getLogger().warning("Stored kit template set " + Integer.toHexString(id) + " is corrupt");
+            throw new IOException("Corrupt kit template set " + Integer.toHexString(id));
+        }
+        // sets are never written with references, reading one must not look up another
+        TemplateSet set = new TemplateSet(id, Serializer.itemStackArrayFromStream(new ByteArrayInputStream(raw), false));
+        sets.put(id, set);
+        return set;
+    }
+
+    public List<String> getStats() {
+        TemplateSet set = current;
+        return List.of("Kit room templates: " + (!enabled ? "disabled" : set == null ? "none" : set.size() + " items in set " + Integer.toHexString(set.getId())),
+                "Template sets loaded: " + sets.size());
+    }
+
+    private static int setId(byte[] raw) {
+        CRC32 crc = new CRC32();
+        crc.update(raw);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * The distinct items of the kit room at one point in time, with amounts set to one.
+     */
+    public static final class TemplateSet {
+
+        private final int id;
+        private final ItemStack[] items;
+        private final Map<Material, int[]> indexByType = new EnumMap<>(Material.class);
+
+        private TemplateSet(int id, ItemStack[] items) {
+            this.id = id;
+            this.items = items;
+            Map<Material, List<Integer>> byType = new EnumMap<>(Material.class);
+            for (int i = 0; i < items.length; i++) {
+                if (items[i] != null) {
+                    byType.computeIfAbsent(items[i].getType(), type -> new ArrayList<>()).add(i);
+                }
+            }
+            byType.forEach((type, indexes) -> indexByType.put(type, indexes.stream().mapToInt(Integer::intValue).toArray()));
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public int size() {
+            return items.length;
+        }
+
+        /**
+         * @param item kit item.
+         * @return index of the template the item is a copy of, ignoring the amount, or -1.
+         */
+        public int find(ItemStack item) {
+            if (item == null) {
+                return -1;
+            }
+            int[] candidates = indexByType.get(item.getType());
+            if (candidates != null) {
+                for (int index : candidates) {
+                    if (items[index].isSimilar(item)) {
+                        return index;
+                    }
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return a new copy of the template with the given amount.
+         * @throws IOException if there is no such template.
+         */
+        public ItemStack create(int index, int amount) throws IOException {
+            if (index < 0 || index >= items.length || items[index] == null) {
+                throw new IOException("Invalid kit template " + index + " in set " + Integer.toHexString(id));
+            }
+            ItemStack item = items[index].clone();
+            item.setAmount(amount);
+            return item;
+        }
+    }
+}
@@ -23,12 +23,64 @@ import org.bukkit.util.io.BukkitObjectInputStream;
 import org.bukkit.util.io.BukkitObjectOutputStream;
 import org.yaml.snakeyaml.external.biz.base64Coder.Base64Coder;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
 
+/**
+ * Turns kits into the bytes they are stored as and back.
+ * <p>
+ * There are two item codecs. The Bukkit codec writes Java object serialization through
+ * {@link BukkitObjectOutputStream} and starts with the serialization magic byte {@code 0xAC}. The Paper codec writes
+ * {@link #FORMAT_PAPER} followed by the item count and each item's {@link ItemStack#serializeAsBytes()}, which skips
+ * the object stream and the map conversion of every item. New kits use the Paper codec when it is enabled and the
+ * server has it, both are always read.
+ * <p>
+ * Kits written with {@link #kitToBytes(ItemStack[])} can also start with {@link #FORMAT_TEMPLATE}: the id of a
+ * {@link KitTemplates} set, then a fixed size entry per slot holding a template index (-1 for none) and an amount,
+ * then the remaining items in one of the codecs above with the referenced slots left empty.
+ */
 public class Serializer {
 
+    public static final byte FORMAT_PAPER = 0x02;
+    public static final byte FORMAT_TEMPLATE = 0x03;
+    private static final int TEMPLATE_HEADER_SIZE = 9;
+    private static final int TEMPLATE_ENTRY_SIZE = 3;
+    private static final byte[] BASE64_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes(StandardCharsets.US_ASCII);
+    private static final boolean PAPER_AVAILABLE = hasPaperCodec();
+    // sanity limits for the Paper format, real kits are far below them
+    private static final int MAX_ITEMS = 4096;
+    private static final int MAX_ITEM_BYTES = 16 * 1024 * 1024;
+    private static volatile boolean paperCodec;
+
+    /**
+     * Selects the codec new kits are written with.
+     *
+     * @param enabled whether to use the Paper codec
+     * @return whether the Paper codec is used, false if it was requested but this server is not Paper
+     */
+    public static boolean setPaperCodec(boolean enabled) {
+        paperCodec = enabled && PAPER_AVAILABLE;
+        return paperCodec;
+    }
+
+    public static boolean isPaperCodec() {
+        return paperCodec;
+    }
+
+    /**
+     * @param raw uncompressed serialized items
+     * @return true if the items were written with the Paper codec, directly or after template references
+     */
+    public static boolean isPaperFormat(byte[] raw) {
+        if (raw.length >= TEMPLATE_HEADER_SIZE && raw[0] == FORMAT_TEMPLATE) {
+            int size = ((raw[5] & 0xFF) << 24) | ((raw[6] & 0xFF) << 16) | ((raw[7] & 0xFF) << 8) | (raw[8] & 0xFF);
+            long items = TEMPLATE_HEADER_SIZE + (long) size * TEMPLATE_ENTRY_SIZE;
+            return size >= 0 && items < raw.length && raw[(int) items] == FORMAT_PAPER;
+        }
+        return raw.length > 0 && raw[0] == FORMAT_PAPER;
+    }
+
     /**
      * A method to serialize an {@link ItemStack} array to Base64 String.
      * <p>
@@ -38,26 +90,118 @@ public class Serializer {
      * @return Base64 string of the items.
      */
     public static String itemStackArrayToBase64(ItemStack[] items) throws IllegalStateException {
-        try {
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            BukkitObjectOutputStream dataOutput = new BukkitObjectOutputStream(outputStream);
+        return Base64Coder.encodeLines(itemStackArrayToBytes(items));
+    }
 
-            // Write the size of the inventory
-            dataOutput.writeInt(items.length);
+    /**
+     * Serializes an {@link ItemStack} array to the bytes kits are stored as, compressed when enabled.
+     *
+     * @param items to serialize.
+     * @return serialized items.
+     */
+    public static byte[] itemStackArrayToBytes(ItemStack[] items) throws IllegalStateException {
+        EncodeBuffer raw = encode(items);
+        return CompressionManager.get().compress(raw.array(), raw.size());
+    }
 
-            // Save every element in the list
-            for (ItemStack item : items) {
-                dataOutput.writeObject(item);
+    /**
+     * Serializes a player or public kit. Items that are copies of kit room items are stored as references to the
+     * current {@link KitTemplates} set when there is one. Kit room pages must use
+     * {@link #itemStackArrayToBytes(ItemStack[])}, the templates are built from them.
+     *
+     * @param items to serialize.
+     * @return serialized items.
+     */
+    public static byte[] kitToBytes(ItemStack[] items) throws IllegalStateException {
+        KitTemplates.TemplateSet templates = KitTemplates.get().current();
+        if (templates == null) {
+            return itemStackArrayToBytes(items);
+        }
+
+        EncodeBuffer buffer = EncodeBuffer.get();
+        try {
+            DataOutputStream dataOutput = new DataOutputStream(buffer);
+            dataOutput.writeByte(FORMAT_TEMPLATE);
+            dataOutput.writeInt(templates.getId());
+            dataOutput.writeInt(items.length);
+            ItemStack[] rest = new ItemStack[items.length];
+            for (int i = 0; i < items.length; i++) {
+                ItemStack item = items[i];
+                int index = item == null || item.getAmount() < 1 || item.getAmount() > 255 ? -1 : templates.find(item);
+                dataOutput.writeShort(index);
+                dataOutput.writeByte(index == -1 ? 0 : item.getAmount());
+                if (index == -1) {
+                    rest[i] = item;
+                }
             }
+            writeItems(buffer, rest);
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to save item stacks.", e);
+        }
+        return CompressionManager.get().compress(buffer.array(), buffer.size());
+    }
+
+    /**
+     * Serializes an {@link ItemStack} array to uncompressed bytes.
+     *
+     * @param items to serialize.
+     * @return serialized items.
+     */
+    public static byte[] itemStackArrayToRawBytes(ItemStack[] items) throws IllegalStateException {
+        return encode(items).toByteArray();
+    }
 
-            // Serialize that array
-            dataOutput.close();
-            return Base64Coder.encodeLines(outputStream.toByteArray());
+    /**
+     * Serializes into this thread's encode buffer. The buffer is only valid until the next call on the same thread.
+     */
+    private static EncodeBuffer encode(ItemStack[] items) {
+        EncodeBuffer buffer = EncodeBuffer.get();
+        try {
+            writeItems(buffer, items);
+            return buffer;
         } catch (Exception e) {
             throw new IllegalStateException("Unable to save item stacks.", e);
         }
     }
 
+    private static void writeItems(OutputStream outputStream, ItemStack[] items) throws IOException {
+        if (paperCodec) {
+            writePaper(new DataOutputStream(outputStream), items);
+        } else {
+            writeBukkit(outputStream, items);
+        }
+    }
+
+    private static void writePaper(DataOutputStream dataOutput, ItemStack[] items) throws IOException {
+        dataOutput.writeByte(FORMAT_PAPER);
+        dataOutput.writeInt(items.length);
+        for (ItemStack item : items) {
+            if (item == null || item.getType().isAir()) {
+                // Paper refuses to serialize empty items
+                dataOutput.writeInt(0);
+                continue;
+            }
+            byte[] bytes = item.serializeAsBytes();
+            dataOutput.writeInt(bytes.length);
+            dataOutput.write(bytes);
+        }
+    }
+
+    private static void writeBukkit(OutputStream outputStream, ItemStack[] items) throws IOException {
+        BukkitObjectOutputStream dataOutput = new BukkitObjectOutputStream(outputStream);
+
+        // Write the size of the inventory
+        dataOutput.writeInt(items.length);
+
+        // Save every element in the list
+        for (ItemStack item : items) {
+            dataOutput.writeObject(item);
+        }
+
+        // Serialize that array
+        dataOutput.close();
+    }
+
 
     /**
      * Gets an array of ItemStacks from Base64 string.
@@ -68,8 +212,145 @@ public class Serializer {
      * @return ItemStack array created from the Base64 string.
      */
     public static ItemStack[] itemStackArrayFromBase64(String data) throws IOException {
+        return itemStackArrayFromBytes(Base64Coder.decodeLines(data));
+    }
+
+    /**
+     * Gets an array of ItemStacks from serialized bytes. Legacy Base64 text and compressed data are detected and
+     * decoded first.
+     *
+     * @param data raw, compressed or Base64 text bytes.
+     * @return ItemStack array created from the data.
+     */
+    public static ItemStack[] itemStackArrayFromBytes(byte[] data) throws IOException {
+        return itemStackArrayFromStream(new ByteArrayInputStream(data));
+    }
+
+    /**
+     * Reads an array of ItemStacks from stored kit data as it comes in. The Base64 and compression layers are
+     * undone while reading, so neither the Base64 text nor the decompressed bytes are ever held in memory.
+     *
+     * @param input raw, compressed or Base64 text bytes, for example a JDBC binary stream.
+     * @return ItemStack array read from the stream.
+     */
+    public static ItemStack[] itemStackArrayFromStream(InputStream input) throws IOException {
+        return itemStackArrayFromStream(input, true);
+    }
+
+    static ItemStack[] itemStackArrayFromStream(InputStream input, boolean templates) throws IOException {
+        PushbackInputStream in = decodeText(new PushbackInputStream(input, 1));
+        int first = peek(in);
+        boolean compressed = first == CompressionManager.FORMAT_DEFLATE;
+        if (compressed) {
+            in.read();
+            in = new PushbackInputStream(CompressionManager.get().inflate(in), 1);
+        }
+
+        ItemStack[] items = readItems(in, templates);
+        // the items can be decoded before the zlib checksum is reached, read on so corrupt data is still noticed
+        if (compressed && in.read() != -1) {
+            throw new IOException("Unexpected data after compressed kit.");
+        }
+        return items;
+    }
+
+    /**
+     * Reads the id of the {@link KitTemplates} set a stored kit refers to, decoding only as much of the kit as that
+     * takes. Inflating the start of a compressed kit loads its dictionary if it is not cached yet.
+     *
+     * @param data raw, compressed or Base64 text bytes.
+     * @return the set id, or null if the kit has no template references.
+     */
+    public static Integer templateSetIdOf(byte[] data) throws IOException {
+        PushbackInputStream in = decodeText(new PushbackInputStream(new ByteArrayInputStream(data), 1));
+        InputStream items = in;
+        if (peek(in) == CompressionManager.FORMAT_DEFLATE) {
+            in.read();
+            items = CompressionManager.get().inflate(in);
+        }
+        // the rest of the kit is never read, closing hands the inflater back
+        try (DataInputStream dataInput = new DataInputStream(items)) {
+            return dataInput.read() == FORMAT_TEMPLATE ? dataInput.readInt() : null;
+        }
+    }
+
+    //wraps the stream in a Base64 decoder if it holds legacy Base64 text
+    private static PushbackInputStream decodeText(PushbackInputStream in) throws IOException {
+        int first = peek(in);
+        return first != -1 && isBase64Byte((byte) first) ? new PushbackInputStream(Base64.getMimeDecoder().wrap(in), 1) : in;
+    }
+
+    private static ItemStack[] readItems(PushbackInputStream in, boolean templates) throws IOException {
+        int first = peek(in);
+        if (first == FORMAT_PAPER) {
+            in.read();
+            return readPaper(new DataInputStream(in));
+        }
+        if (first == FORMAT_TEMPLATE && templates) {
+            in.read();
+            return readTemplated(in);
+        }
+        return readBukkit(in);
+    }
+
+    private static ItemStack[] readTemplated(PushbackInputStream in) throws IOException {
+        DataInputStream dataInput = new DataInputStream(in);
+        KitTemplates.TemplateSet set = KitTemplates.get().getSet(dataInput.readInt());
+        int size = dataInput.readInt();
+        if (size < 0 || size > MAX_ITEMS) {
+            throw new IOException("Invalid item count " + size);
+        }
+        short[] indexes = new short[size];
+        int[] amounts = new int[size];
+        for (int i = 0; i < size; i++) {
+            indexes[i] = dataInput.readShort();
+            amounts[i] = dataInput.readUnsignedByte();
+        }
+
+        // the items that are not references, never references themselves
+        ItemStack[] items = readItems(in, false);
+        if (items.length != size) {
+            throw new IOException("Expected " + size + " items but found " + items.length);
+        }
+        for (int i = 0; i < size; i++) {
+            if (indexes[i] != -1) {
+                items[i] = set.create(indexes[i], amounts[i]);
+            }
+        }
+        return items;
+    }
+
+    private static ItemStack[] readPaper(DataInputStream dataInput) throws IOException {
+        if (!PAPER_AVAILABLE) {
+            throw new IOException("Kit was saved with the Paper item codec, which this server does not support.");
+        }
+
+        int size = dataInput.readInt();
+        if (size < 0 || size > MAX_ITEMS) {
+            throw new IOException("Invalid item count " + size);
+        }
+        ItemStack[] items = new ItemStack[size];
+        for (int i = 0; i < items.length; i++) {
+            int length = dataInput.readInt();
+            if (length == 0) {
+                continue;
+            }
+            if (length < 0 || length > MAX_ITEM_BYTES) {
+                throw new IOException("Invalid item length " + length);
+            }
+            byte[] bytes = new byte[length];
+            dataInput.readFully(bytes);
+            try {
+                items[i] = ItemStack.deserializeBytes(bytes);
+            } catch (RuntimeException e) {
+                throw new IOException("Unable to decode item " + i, e);
+            }
+        }
+        return items;
+    }
+
+    private static ItemStack[] readBukkit(InputStream inputStream) throws IOException {
         try {
-            ByteArrayInputStream inputStream = new ByteArrayInputStream(Base64Coder.decodeLines(data));
             BukkitObjectInputStream dataInput = new BukkitObjectInputStream(inputStream);
             ItemStack[] items = new ItemStack[dataInput.readInt()];
 
@@ -78,10 +359,154 @@ public class Serializer {
                 items[i] = (ItemStack) dataInput.readObject();
             }
 
-            dataInput.close();
+            // not closed, the stream belongs to the caller
             return items;
         } catch (ClassNotFoundException e) {
             throw new IOException("Unable to decode class type.", e);
         }
     }
+
+    private static int peek(PushbackInputStream in) throws IOException {
+        int b = in.read();
+        if (b != -1) {
+            in.unread(b);
+        }
+        return b;
+    }
+
+    private static boolean hasPaperCodec() {
+        try {
+            ItemStack.class.getMethod("serializeAsBytes");
+            ItemStack.class.getMethod("deserializeBytes", byte[].class);
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Undoes the Base64 text and compression layers of stored kit data.
+     *
+     * @param data raw, compressed or Base64 text bytes.
+     * @return uncompressed serialized items.
+     */
+    public static byte[] toRawBytes(byte[] data) throws IOException {
+        try {
+            data = fromStoredBytes(data);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid Base64 kit data.", e);
+        }
+        if (CompressionManager.isCompressed(data)) {
+            data = CompressionManager.get().decompress(data);
+        }
+        return data;
+    }
+
+    /**
+     * Decodes stored bytes that text based backends returned as Base64 text.
+     *
+     * @param data bytes from {@link dev.noah.perplayerkit.storage.StorageManager#getKitBytesByID(String)}.
+     * @return the decoded bytes, or the input if it is not Base64 text.
+     * @throws IllegalArgumentException if the text is not valid Base64.
+     */
+    public static byte[] fromStoredBytes(byte[] data) {
+        // the MIME decoder skips the line breaks Base64Coder.encodeLines adds, without building a String first
+        return isBase64Text(data) ? Base64.getMimeDecoder().decode(data) : data;
+    }
+
+    /**
+     * Raw and compressed data never start with a Base64 character, so the first byte tells the two apart.
+     *
+     * @param data stored kit data.
+     * @return true if the data is legacy Base64 text.
+     */
+    public static boolean isBase64Text(byte[] data) {
+        return data.length > 0 && isBase64Byte(data[0]);
+    }
+
+    private static boolean isBase64Byte(byte value) {
+        for (byte b : BASE64_ALPHABET) {
+            if (value == b) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Byte version of {@link #decodeStorageText(String)}, decoding Base64 text without building a String first.
+     *
+     * @param data stored bytes.
+     * @return raw bytes, or the input if it is not valid Base64 text.
+     */
+    public static byte[] decodeStoredBytes(byte[] data) {
+        try {
+            return fromStoredBytes(data);
+        } catch (IllegalArgumentException e) {
+            return data;
+        }
+    }
+
+    /**
+     * Converts stored bytes to the text form used by text based storage.
+     *
+     * @param data raw bytes or Base64 text bytes.
+     * @return Base64 text.
+     */
+    public static String toStorageText(byte[] data) {
+        return isBase64Text(data) ? new String(data, StandardCharsets.US_ASCII) : Base64Coder.encodeLines(data);
+    }
+
+    /**
+     * Converts text from text based storage to bytes without decoding it.
+     *
+     * @param data stored text.
+     * @return the text as bytes, readable by {@link #itemStackArrayFromBytes(byte[])}.
+     */
+    public static byte[] fromStorageText(String data) {
+        return data.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Converts text from text based storage to raw bytes, decoding the Base64 when it is valid.
+     *
+     * @param data stored text.
+     * @return raw bytes, or the text as bytes if it is not valid Base64.
+     */
+    public static byte[] decodeStorageText(String data) {
+        try {
+            return Base64Coder.decodeLines(data);
+        } catch (IllegalArgumentException e) {
+            return fromStorageText(data);
+        }
+    }
+
+    /**
+     * Per thread output buffer for encoding, so saving a kit does not grow a fresh stream every time. A buffer that
+     * grew past {@link #MAX_RETAINED_SIZE} for an unusually large kit is dropped instead of being kept.
+     */
+    private static final class EncodeBuffer extends ByteArrayOutputStream {
+
+        private static final int INITIAL_SIZE = 16 * 1024;
+        private static final int MAX_RETAINED_SIZE = 256 * 1024;
+        private static final ThreadLocal<EncodeBuffer> BUFFERS = ThreadLocal.withInitial(EncodeBuffer::new);
+
+        private EncodeBuffer() {
+            super(INITIAL_SIZE);
+        }
+
+        static EncodeBuffer get() {
+            EncodeBuffer buffer = BUFFERS.get();
+            if (buffer.buf.length > MAX_RETAINED_SIZE) {
+                buffer = new EncodeBuffer();
+                BUFFERS.set(buffer);
+            }
+            buffer.reset();
+            return buffer;
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
 }